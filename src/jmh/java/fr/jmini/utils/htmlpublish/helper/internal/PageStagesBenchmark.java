@@ -0,0 +1,138 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.jmini.utils.htmlpublish.helper.ConfigurationHolder;
+import fr.jmini.utils.htmlpublish.helper.ConfigurationOptions;
+import fr.jmini.utils.htmlpublish.helper.RewriteStrategy;
+import fr.jmini.utils.htmlpublish.helper.SiteGenerator;
+
+/**
+ * The individual stages of the publication of one page, measured on a page located in the middle of a generated site.
+ * The stages are modifying the document, so a fresh copy of the parsed document is prepared before each invocation (outside of the measurement).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageStagesBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int pageCount;
+
+    @Param({ "5", "50" })
+    int linkDensity;
+
+    @Param({ "1", "4", "10" })
+    int treeDepth;
+
+    @Param({ "NO_MODIFICATION", "SHORT_SHA1_SUFFIX" })
+    RewriteStrategy rewriteStrategy;
+
+    private Path folder;
+    private Parameters param;
+    private PageHolder page;
+    private String relPathToOutputFolder;
+    private Document original;
+    private Map<String, String> resourceMapping;
+    private Document doc;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("stages-benchmark");
+        Path inputFolder = folder.resolve("input");
+        new SiteGenerator()
+                .pageCount(pageCount)
+                .treeDepth(treeDepth)
+                // with the default fan-out, the page count is reached before the deepest levels of a deep tree:
+                .fanOut(treeDepth > 4 ? 1 : 5)
+                .linksPerPage(linkDensity)
+                .generate(inputFolder);
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(folder.resolve("output"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .siteName("Benchmark")
+                        .resourcesRewriteStrategy(rewriteStrategy));
+        param = Impl.prepareParameters(config);
+        List<PageHolder> pages = param.getAllPageHolders();
+        pages.removeIf(p -> !p.isInputFileExists());
+        page = pages.get(pages.size() / 2);
+        relPathToOutputFolder = Impl.relativizeToString(page.getOutputFile()
+                .getParent(), param.getOutputRootFolder());
+        if (!relPathToOutputFolder.isEmpty()) {
+            relPathToOutputFolder = relPathToOutputFolder + "/";
+        }
+        Files.createDirectories(page.getOutputFile()
+                .getParent());
+        original = page.getDocument();
+        // titles are read before the documents are copied, like during a publication:
+        pages.forEach(PageHolder::getTitle);
+        resourceMapping = Impl.copyResources(param);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyDocument() {
+        doc = original.clone();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Benchmark
+    public Document rewriteLinks() {
+        Impl.rewriteLinks(doc, param.getInputRootFolder(), page.getInputFile(), param.getOutputRootFolder(), page.getOutputFile(), param.getOutputFilesByInputFile(), param.getOptions()
+                .getLinkToIndexHtmlStrategy(), null);
+        return doc;
+    }
+
+    @Benchmark
+    public List<Element> moveAndCopy() throws IOException {
+        ConfigurationOptions options = param.getOptions();
+        return Impl.moveAndCopy(doc, page.getInputFile(), param, relPathToOutputFolder, options.getImagesOutputFolder(), "img", (e) -> true, "src");
+    }
+
+    @Benchmark
+    public Map<String, String> copyResources() {
+        return Impl.copyResources(param);
+    }
+
+    @Benchmark
+    public Element createContentToc() {
+        Element toc = new Document("").appendElement("div");
+        Impl.createContentToc(param.getOptions(), param.getListener(), doc.body(), 2, 1, 3, toc);
+        return toc;
+    }
+
+    @Benchmark
+    public byte[] createOutPage() {
+        return Impl.createOutPage(param, relPathToOutputFolder, resourceMapping, page, doc.body(), Collections.emptyList());
+    }
+}
@@ -0,0 +1,105 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.jmini.utils.htmlpublish.helper.ConfigurationHolder;
+import fr.jmini.utils.htmlpublish.helper.ConfigurationOptions;
+import fr.jmini.utils.htmlpublish.helper.HtmlPublishHelper;
+import fr.jmini.utils.htmlpublish.helper.InMemoryOutputSink;
+import fr.jmini.utils.htmlpublish.helper.RewriteStrategy;
+import fr.jmini.utils.htmlpublish.helper.SiteGenerator;
+
+/**
+ * End-to-end publication of a generated site with {@link HtmlPublishHelper#publish(ConfigurationHolder)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PublishBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int pageCount;
+
+    @Param({ "5", "50" })
+    int linkDensity;
+
+    @Param({ "1", "4", "10" })
+    int treeDepth;
+
+    @Param({ "NO_MODIFICATION", "SHORT_SHA1_SUFFIX" })
+    RewriteStrategy rewriteStrategy;
+
+    @Param({ "true", "false" })
+    boolean completeSite;
+
+    /**
+     * When true, the files are published to an {@link InMemoryOutputSink}: only the CPU cost of the publication is measured.
+     */
+    @Param({ "false", "true" })
+    boolean inMemory;
+
+    private Path folder;
+    private ConfigurationHolder config;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("publish-benchmark");
+        Path inputFolder = folder.resolve("input");
+        new SiteGenerator()
+                .pageCount(pageCount)
+                .treeDepth(treeDepth)
+                // with the default fan-out, the page count is reached before the deepest levels of a deep tree:
+                .fanOut(treeDepth > 4 ? 1 : 5)
+                .linksPerPage(linkDensity)
+                .generate(inputFolder);
+        config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(folder.resolve("output"))
+                .options(new ConfigurationOptions()
+                        .completeSite(completeSite)
+                        .siteName("Benchmark")
+                        .resourcesRewriteStrategy(rewriteStrategy));
+    }
+
+    /**
+     * Each publication starts with an empty output (the deletion is not measured), so that both variants do the same work.
+     */
+    @Setup(Level.Invocation)
+    public void clearOutput() throws IOException {
+        if (inMemory) {
+            config.outputSink(new InMemoryOutputSink());
+        } else {
+            SiteGenerator.deleteFolder(folder.resolve("output"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Benchmark
+    public void publish() {
+        HtmlPublishHelper.publish(config);
+    }
+}
@@ -37,6 +37,26 @@ public class ConfigurationHolder {
      */
     private ConfigurationOptions options;
 
+    /**
+     * Listener notified of the progress of the publication
+     */
+    private PublishListener listener;
+
+    /**
+     * Destination of the published files, when omitted the files are written to the {@link #outputRootFolder}
+     */
+    private OutputSink outputSink;
+
+    /**
+     * When true, the pages and the resources are written as entries of a zip archive located at the {@link #outputRootFolder}, instead of files in a folder
+     */
+    private boolean outputArchive;
+
+    /**
+     * File where the manifest used by a partial publication is written, when omitted a file next to the {@link #outputRootFolder} is used (<code>&lt;outputRootFolder&gt;.html-publish-manifest</code>)
+     */
+    private Path manifestFile;
+
     public Path getInputRootFolder() {
         return inputRootFolder;
     }
@@ -121,4 +141,56 @@ public class ConfigurationHolder {
         return this;
     }
 
+    public Optional<PublishListener> getListener() {
+        return Optional.ofNullable(listener);
+    }
+
+    public void setListener(PublishListener listener) {
+        this.listener = listener;
+    }
+
+    public ConfigurationHolder listener(PublishListener publishListener) {
+        setListener(publishListener);
+        return this;
+    }
+
+    public Optional<OutputSink> getOutputSink() {
+        return Optional.ofNullable(outputSink);
+    }
+
+    public void setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
+    public ConfigurationHolder outputSink(OutputSink sink) {
+        setOutputSink(sink);
+        return this;
+    }
+
+    public boolean isOutputArchive() {
+        return outputArchive;
+    }
+
+    public void setOutputArchive(boolean outputArchive) {
+        this.outputArchive = outputArchive;
+    }
+
+    public ConfigurationHolder outputArchive(boolean archive) {
+        setOutputArchive(archive);
+        return this;
+    }
+
+    public Optional<Path> getManifestFile() {
+        return Optional.ofNullable(manifestFile);
+    }
+
+    public void setManifestFile(Path manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    public ConfigurationHolder manifestFile(Path path) {
+        setManifestFile(path);
+        return this;
+    }
+
 }
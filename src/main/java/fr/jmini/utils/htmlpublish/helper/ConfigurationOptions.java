@@ -7,6 +7,50 @@ public class ConfigurationOptions {
      */
     private boolean clearOutputRootFolder = false;
 
+    /**
+     * Indicates if the output files having already the content to be written are left untouched (their modification time is kept), so that a synchronization of the output folder only transfers the modified files.
+     */
+    private boolean skipUnchangedOutputFiles = false;
+
+    /**
+     * Indicates if the files of the {@link ConfigurationHolder#getOutputRootFolder()} that are not produced by the publication are deleted at the end of the publishing. When set, the output folder is not deleted before starting
+     * the publishing (see {@link #clearOutputRootFolder}).
+     */
+    private boolean syncOutputRootFolder = false;
+
+    /**
+     * Indicates if the publication is done in a staging folder (sibling of the {@link ConfigurationHolder#getOutputRootFolder()}) that replaces the output folder at the end of the publishing, so that a half-written site is
+     * never served. The staging folder becomes a release folder and the output folder a symbolic link to it, replaced atomically by the next staged publications. The files having the same content as in the previous output
+     * are hard links to the previous files.
+     */
+    private boolean stagedPublishing = false;
+
+    /**
+     * Indicates if a gzip compressed copy (<code>.gz</code> sibling) of the text files (html, css, js, svg, json, xml and txt files) is written next to each file, for servers serving pre-compressed files.
+     */
+    private boolean gzipOutputFiles = false;
+
+    /**
+     * Compression level (from 1 to 9) of the files written when {@link #gzipOutputFiles} is set.
+     */
+    private int gzipLevel = 9;
+
+    /**
+     * Size in bytes under which the files are not compressed when {@link #gzipOutputFiles} is set.
+     */
+    private int gzipMinimumSize = 256;
+
+    /**
+     * Indicates if the pages are written without pretty printing: the comments are removed and the whitespace is collapsed, except in the <code>pre</code>, <code>code</code> and <code>textarea</code> elements.
+     */
+    private boolean compactOutput = false;
+
+    /**
+     * Indicates if the resources of the default theme are optimized: <code>site.css</code> and <code>site.js</code> are minified and only the woff2 fonts are copied (the <code>@font-face</code> rules are rewritten
+     * accordingly).
+     */
+    private boolean optimizeThemeResources = false;
+
     /**
      * Name of the folder relative to the {@link ConfigurationHolder#getInputRootFolder()} that is used as base folder to get the `pages.yaml` file that controls page ordering.
      */
@@ -100,6 +144,110 @@ public class ConfigurationOptions {
         return this;
     }
 
+    public boolean isSkipUnchangedOutputFiles() {
+        return skipUnchangedOutputFiles;
+    }
+
+    public void setSkipUnchangedOutputFiles(boolean skipUnchangedOutputFiles) {
+        this.skipUnchangedOutputFiles = skipUnchangedOutputFiles;
+    }
+
+    public ConfigurationOptions skipUnchangedOutputFiles(boolean skip) {
+        setSkipUnchangedOutputFiles(skip);
+        return this;
+    }
+
+    public boolean isSyncOutputRootFolder() {
+        return syncOutputRootFolder;
+    }
+
+    public void setSyncOutputRootFolder(boolean syncOutputRootFolder) {
+        this.syncOutputRootFolder = syncOutputRootFolder;
+    }
+
+    public ConfigurationOptions syncOutputRootFolder(boolean sync) {
+        setSyncOutputRootFolder(sync);
+        return this;
+    }
+
+    public boolean isStagedPublishing() {
+        return stagedPublishing;
+    }
+
+    public void setStagedPublishing(boolean stagedPublishing) {
+        this.stagedPublishing = stagedPublishing;
+    }
+
+    public ConfigurationOptions stagedPublishing(boolean staged) {
+        setStagedPublishing(staged);
+        return this;
+    }
+
+    public boolean isGzipOutputFiles() {
+        return gzipOutputFiles;
+    }
+
+    public void setGzipOutputFiles(boolean gzipOutputFiles) {
+        this.gzipOutputFiles = gzipOutputFiles;
+    }
+
+    public ConfigurationOptions gzipOutputFiles(boolean gzip) {
+        setGzipOutputFiles(gzip);
+        return this;
+    }
+
+    public int getGzipLevel() {
+        return gzipLevel;
+    }
+
+    public void setGzipLevel(int gzipLevel) {
+        this.gzipLevel = gzipLevel;
+    }
+
+    public ConfigurationOptions gzipLevel(int level) {
+        setGzipLevel(level);
+        return this;
+    }
+
+    public int getGzipMinimumSize() {
+        return gzipMinimumSize;
+    }
+
+    public void setGzipMinimumSize(int gzipMinimumSize) {
+        this.gzipMinimumSize = gzipMinimumSize;
+    }
+
+    public ConfigurationOptions gzipMinimumSize(int size) {
+        setGzipMinimumSize(size);
+        return this;
+    }
+
+    public boolean isCompactOutput() {
+        return compactOutput;
+    }
+
+    public void setCompactOutput(boolean compactOutput) {
+        this.compactOutput = compactOutput;
+    }
+
+    public ConfigurationOptions compactOutput(boolean compact) {
+        setCompactOutput(compact);
+        return this;
+    }
+
+    public boolean isOptimizeThemeResources() {
+        return optimizeThemeResources;
+    }
+
+    public void setOptimizeThemeResources(boolean optimizeThemeResources) {
+        this.optimizeThemeResources = optimizeThemeResources;
+    }
+
+    public ConfigurationOptions optimizeThemeResources(boolean optimize) {
+        setOptimizeThemeResources(optimize);
+        return this;
+    }
+
     public String getPagesBaseFolder() {
         return pagesBaseFolder;
     }
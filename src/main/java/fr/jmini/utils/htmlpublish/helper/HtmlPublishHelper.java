@@ -1,11 +1,14 @@
 package fr.jmini.utils.htmlpublish.helper;
 
+import java.nio.file.Path;
+import java.util.Collection;
+
 import fr.jmini.utils.htmlpublish.helper.internal.Impl;
 
 public class HtmlPublishHelper {
 
     /**
-     * Publish the HTML files as configured
+     * Publish the HTML files as configured. Use a {@link Publisher} instance to reuse the caches across several publications.
      *
      * @param configuration
      *            the holder containing the configuration.
@@ -14,4 +17,44 @@ public class HtmlPublishHelper {
         Impl.run(configuration);
     }
 
+    /**
+     * Publish the HTML files as configured, see {@link #publish(ConfigurationHolder)}.
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @return the report of the publication (durations, I/O counters, slowest pages).
+     */
+    public static PublishReport publishWithReport(ConfigurationHolder configuration) {
+        return Impl.run(configuration);
+    }
+
+    /**
+     * Publish only the pages affected by the changed files, reusing the output of the previous publication. A manifest is written to find the affected pages: the changed pages, the pages using a changed resource file and
+     * the pages whose output file, link targets or navigation (complete site) has changed. It is written next to the output folder (<code>&lt;outputRootFolder&gt;.html-publish-manifest</code> file) or in the file set with
+     * {@link ConfigurationHolder#manifestFile(Path)}, so that it is not published with the site. When only some pages are published, the output folder is not cleared and the output files of the removed pages are
+     * deleted. When no manifest is found or when the options have changed, all the pages are published as with {@link #publish(ConfigurationHolder)}: the output folder is then cleared, synchronized or staged as configured
+     * in the options.
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @param changedFiles
+     *            the changed input files (for example computed with <code>git diff</code>). Relative paths are resolved against the working directory.
+     */
+    public static void publish(ConfigurationHolder configuration, Collection<Path> changedFiles) {
+        Impl.run(configuration, changedFiles);
+    }
+
+    /**
+     * Publish only the pages affected by the changed files, see {@link #publish(ConfigurationHolder, Collection)}.
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @param changedFiles
+     *            the changed input files (for example computed with <code>git diff</code>). Relative paths are resolved against the working directory.
+     * @return the report of the publication.
+     */
+    public static PublishReport publishWithReport(ConfigurationHolder configuration, Collection<Path> changedFiles) {
+        return Impl.run(configuration, changedFiles);
+    }
+
 }
@@ -0,0 +1,78 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keep the published files in memory, for example to serve them without writing them to the disk. The content is kept across the publications using this sink: a publication replaces the files it writes.
+ * <p>
+ * The files are stored with their absolute and normalized path. This class is thread-safe.
+ */
+public class InMemoryOutputSink implements OutputSink {
+
+    private final Map<Path, byte[]> files = new ConcurrentHashMap<>();
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath()
+                .normalize();
+    }
+
+    @Override
+    public boolean exists(Path file) {
+        return files.containsKey(normalize(file));
+    }
+
+    @Override
+    public void write(Path file, byte[] content) {
+        files.put(normalize(file), content.clone());
+    }
+
+    @Override
+    public void copy(Path source, Path file) throws IOException {
+        files.put(normalize(file), Files.readAllBytes(source));
+    }
+
+    @Override
+    public List<Path> listFiles(Path folder) {
+        Path normalized = normalize(folder);
+        return files.keySet()
+                .stream()
+                .filter(p -> p.startsWith(normalized))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param file
+     *            path of the file in the output folder.
+     * @return the content of the file, if it was published.
+     */
+    public Optional<byte[]> getContent(Path file) {
+        return Optional.ofNullable(files.get(normalize(file)))
+                .map(byte[]::clone);
+    }
+
+    /**
+     * @return the paths of the published files.
+     */
+    public List<Path> getFiles() {
+        return Collections.unmodifiableList(files.keySet()
+                .stream()
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Remove all the files.
+     */
+    public void clear() {
+        files.clear();
+    }
+}
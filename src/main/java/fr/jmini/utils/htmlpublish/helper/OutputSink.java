@@ -0,0 +1,47 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Destination of the files written by a publication (pages, resources and catalogs). By default the files are written to the {@link ConfigurationHolder#getOutputRootFolder()} (or to an archive, see
+ * {@link ConfigurationHolder#outputArchive(boolean)}), a sink configured with {@link ConfigurationHolder#outputSink(OutputSink)} receives them instead (see {@link InMemoryOutputSink}).
+ * <p>
+ * The files are designated by their path in the output folder: the paths are computed from the {@link ConfigurationHolder#getOutputRootFolder()}, that is still used to compute the relative links. The catalogs use the
+ * path of their output file.
+ */
+public interface OutputSink {
+
+    /**
+     * @return true when the file was already written (by this publication or by a previous one, depending on the sink). An existing resource file is not written again.
+     */
+    boolean exists(Path file);
+
+    /**
+     * Write a file, an existing file is replaced.
+     */
+    void write(Path file, byte[] content) throws IOException;
+
+    /**
+     * Copy an input file to the output, an existing file is replaced.
+     */
+    void copy(Path source, Path file) throws IOException;
+
+    /**
+     * @return the files located in the folder (recursively), used by the catalogs scanning a folder.
+     */
+    List<Path> listFiles(Path folder) throws IOException;
+
+    /**
+     * Called at the end of a successful publication.
+     */
+    default void finish() throws IOException {
+    }
+
+    /**
+     * Called when the publication fails.
+     */
+    default void abort() {
+    }
+}
@@ -0,0 +1,108 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import fr.jmini.utils.htmlpublish.helper.internal.Plan;
+
+/**
+ * Page tree of a publication, computed once by {@link Publisher#plan(ConfigurationHolder)} and published as many times as needed with {@link Publisher#publish(PublicationPlan)} or {@link Publisher#publish(PublicationPlan, Path, ConfigurationOptions)}.
+ * <p>
+ * The plan keeps the parsed documents as long as the memory allows it (soft references), so that they are not parsed again by the next publications.
+ */
+public class PublicationPlan {
+
+    private final Plan plan;
+
+    PublicationPlan(Plan plan) {
+        this.plan = plan;
+    }
+
+    Plan getPlan() {
+        return plan;
+    }
+
+    public Path getInputRootFolder() {
+        return plan.getInputRootFolder();
+    }
+
+    public Path getOutputRootFolder() {
+        return plan.getOutputRootFolder();
+    }
+
+    public String getSiteName() {
+        return plan.getSiteName();
+    }
+
+    /**
+     * @return the root pages of the page tree.
+     */
+    public List<Page> getPages() {
+        return plan.getPages();
+    }
+
+    /**
+     * @return the number of pages that will be published (pages with an existing input file).
+     */
+    public int getPageCount() {
+        return countPages(getPages());
+    }
+
+    private static int countPages(List<Page> pages) {
+        int count = 0;
+        for (Page page : pages) {
+            if (page.isPublished()) {
+                count++;
+            }
+            count += countPages(page.getChildren());
+        }
+        return count;
+    }
+
+    public static class Page {
+        private final Path inputFile;
+        private final Path outputFile;
+        private final boolean published;
+        private final Supplier<String> title;
+        private final List<Page> children;
+
+        public Page(Path inputFile, Path outputFile, boolean published, Supplier<String> title, List<Page> children) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.published = published;
+            this.title = title;
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        public Path getInputFile() {
+            return inputFile;
+        }
+
+        /**
+         * @return the output file in the output folder of the plan (null for a folder without page).
+         */
+        public Path getOutputFile() {
+            return outputFile;
+        }
+
+        /**
+         * @return true when the page has an input file, that is published.
+         */
+        public boolean isPublished() {
+            return published;
+        }
+
+        /**
+         * @return the title of the page. It can require to parse the document of the page.
+         */
+        public String getTitle() {
+            return title.get();
+        }
+
+        public List<Page> getChildren() {
+            return children;
+        }
+    }
+}
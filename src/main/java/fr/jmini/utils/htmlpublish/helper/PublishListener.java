@@ -0,0 +1,43 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.nio.file.Path;
+
+/**
+ * Receive the progress of a publication. All methods have an empty default implementation, override the ones you are interested in.
+ * <p>
+ * The methods are called from the threads publishing the pages, an implementation must be thread-safe and should return quickly (the publication waits for it).
+ */
+public interface PublishListener {
+
+    /**
+     * Called once the page tree is computed, before the first page is published.
+     *
+     * @param pageCount
+     *            number of pages that will be published
+     */
+    default void planningCompleted(int pageCount) {
+    }
+
+    default void pageStarted(Path inputFile, Path outputFile) {
+    }
+
+    default void pageFinished(Path inputFile, Path outputFile) {
+    }
+
+    /**
+     * Called when a resource file (image, css, javascript or site resource) is written to the output folder. Nothing is called when the file already exists in the output folder.
+     *
+     * @param source
+     *            path of the input file or name of the site resource
+     * @param outputFile
+     *            the written file
+     */
+    default void assetCopied(String source, Path outputFile) {
+    }
+
+    /**
+     * Called when a problem does not stop the publication (missing file, heading without id, invalid <code>pages.yaml</code> file...). When no listener is configured, the message is printed to <code>System.err</code>.
+     */
+    default void warning(String message) {
+    }
+}
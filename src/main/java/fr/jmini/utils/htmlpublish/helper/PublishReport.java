@@ -0,0 +1,234 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of a publication: time spent in each phase, I/O counters and slowest pages.
+ */
+public class PublishReport {
+
+    public static enum Phase {
+        /**
+         * Computation of the page tree (scan of the input folders, ordering, titles needed by the site name).
+         */
+        PLANNING,
+
+        /**
+         * Parsing of the input documents.
+         */
+        PARSING,
+
+        /**
+         * Copy of the images, css, javascript and site resources.
+         */
+        ASSET_COPY,
+
+        /**
+         * Rewrite of the links between pages.
+         */
+        LINK_REWRITE,
+
+        /**
+         * Creation of the output pages.
+         */
+        RENDERING,
+
+        /**
+         * Write of the output pages.
+         */
+        WRITING,
+
+        /**
+         * Creation of the catalogs.
+         */
+        CATALOGS
+    }
+
+    private final Duration totalDuration;
+    private final Map<Phase, Duration> phaseDurations;
+    private final int publishedPages;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long filesCopied;
+    private final long filesSkipped;
+    private final long cacheHits;
+    private final List<PageTiming> slowestPages;
+
+    public PublishReport(Duration totalDuration, Map<Phase, Duration> phaseDurations, int publishedPages, long bytesRead, long bytesWritten, long filesCopied, long filesSkipped, long cacheHits, List<PageTiming> slowestPages) {
+        this.totalDuration = totalDuration;
+        this.phaseDurations = Collections.unmodifiableMap(new EnumMap<>(phaseDurations));
+        this.publishedPages = publishedPages;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.filesCopied = filesCopied;
+        this.filesSkipped = filesSkipped;
+        this.cacheHits = cacheHits;
+        this.slowestPages = Collections.unmodifiableList(slowestPages);
+    }
+
+    /**
+     * @return wall-clock duration of the complete publication.
+     */
+    public Duration getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * @return time spent in a phase. When a phase is nested in an other one (a document parsed to read its title while a page is rendered), the time is only counted in the inner phase.
+     */
+    public Duration getPhaseDuration(Phase phase) {
+        return phaseDurations.getOrDefault(phase, Duration.ZERO);
+    }
+
+    public int getPublishedPages() {
+        return publishedPages;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return number of resource files (images, css, javascript, site resources) written to the output folder.
+     */
+    public long getFilesCopied() {
+        return filesCopied;
+    }
+
+    /**
+     * @return number of resource files that were not written, because they already exist in the output folder.
+     */
+    public long getFilesSkipped() {
+        return filesSkipped;
+    }
+
+    /**
+     * @return number of lookups served by a cache of the publication (for example compiled selectors).
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return the pages that took the most time to be published, slowest first.
+     */
+    public List<PageTiming> getSlowestPages() {
+        return slowestPages;
+    }
+
+    /**
+     * @return the report as JSON object. Durations are expressed in milliseconds.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"totalMillis\": " + totalDuration.toMillis() + ",\n");
+        sb.append("  \"phases\": {");
+        Phase[] phases = Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    " + jsonString(toCamelCase(phases[i].name())) + ": " + getPhaseDuration(phases[i]).toMillis());
+        }
+        sb.append("\n  },\n");
+        sb.append("  \"publishedPages\": " + publishedPages + ",\n");
+        sb.append("  \"bytesRead\": " + bytesRead + ",\n");
+        sb.append("  \"bytesWritten\": " + bytesWritten + ",\n");
+        sb.append("  \"filesCopied\": " + filesCopied + ",\n");
+        sb.append("  \"filesSkipped\": " + filesSkipped + ",\n");
+        sb.append("  \"cacheHits\": " + cacheHits + ",\n");
+        sb.append("  \"slowestPages\": [");
+        for (int i = 0; i < slowestPages.size(); i++) {
+            PageTiming page = slowestPages.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    { \"inputFile\": " + jsonString(String.valueOf(page.getInputFile())) + ", \"outputFile\": " + jsonString(String.valueOf(page.getOutputFile())) + ", \"millis\": " + page.getDuration()
+                    .toMillis() + " }");
+        }
+        sb.append(slowestPages.isEmpty() ? "]\n" : "\n  ]\n");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static String toCamelCase(String name) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : name.toLowerCase()
+                .toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"')
+                .toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    public static class PageTiming {
+        private final Path inputFile;
+        private final Path outputFile;
+        private final Duration duration;
+
+        public PageTiming(Path inputFile, Path outputFile, Duration duration) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.duration = duration;
+        }
+
+        public Path getInputFile() {
+            return inputFile;
+        }
+
+        public Path getOutputFile() {
+            return outputFile;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+    }
+}
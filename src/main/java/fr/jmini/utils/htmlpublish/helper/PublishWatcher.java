@@ -0,0 +1,37 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import fr.jmini.utils.htmlpublish.helper.internal.Watcher;
+
+/**
+ * Watch mode started by {@link Publisher#watch(ConfigurationHolder)}: the pages are republished each time the input files are modified, until the watcher is closed.
+ * <p>
+ * Use a {@link PublishListener} in the configuration to be notified of the republished pages and of the errors.
+ */
+public class PublishWatcher implements Closeable {
+
+    private final Watcher watcher;
+    private final PublishReport initialReport;
+
+    PublishWatcher(Watcher watcher) {
+        this.watcher = watcher;
+        this.initialReport = watcher.start();
+    }
+
+    /**
+     * @return the report of the publication of all the pages, done when the watcher was started.
+     */
+    public PublishReport getInitialReport() {
+        return initialReport;
+    }
+
+    /**
+     * Stop watching the input folders.
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+}
@@ -0,0 +1,127 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+
+import fr.jmini.utils.htmlpublish.helper.internal.Impl;
+import fr.jmini.utils.htmlpublish.helper.internal.PublisherCache;
+import fr.jmini.utils.htmlpublish.helper.internal.Watcher;
+
+/**
+ * Publication engine that can be reused for several publications.
+ * <p>
+ * The instance keeps caches (compiled selectors, site resources, hashes of the copied files) that are shared by the publications. It is thread-safe: several publications can run at the same time, as long as they do not use the same output folder. The configurations are not modified by the publications.
+ */
+public class Publisher {
+
+    private static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(200);
+
+    private final PublisherCache cache = new PublisherCache();
+
+    /**
+     * Publish the HTML files as configured
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @return the report of the publication (durations, I/O counters, slowest pages).
+     */
+    public PublishReport publish(ConfigurationHolder configuration) {
+        return Impl.run(configuration, cache);
+    }
+
+    /**
+     * Publish only the pages affected by the changed files, reusing the output of the previous publication (see {@link HtmlPublishHelper#publish(ConfigurationHolder, Collection)}).
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @param changedFiles
+     *            the changed input files. Relative paths are resolved against the working directory.
+     * @return the report of the publication.
+     */
+    public PublishReport publish(ConfigurationHolder configuration, Collection<Path> changedFiles) {
+        return Impl.run(configuration, changedFiles, cache);
+    }
+
+    /**
+     * Compute the page tree of a publication (scan of the input folders, ordering, titles, previous and next pages, home link), without publishing anything.
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @return the plan, that can be inspected and published several times.
+     */
+    public PublicationPlan plan(ConfigurationHolder configuration) {
+        return new PublicationPlan(Impl.plan(configuration, cache));
+    }
+
+    /**
+     * Publish a plan to its output folder, with the options of its configuration.
+     *
+     * @param plan
+     *            the plan computed by {@link #plan(ConfigurationHolder)}.
+     * @return the report of the publication.
+     */
+    public PublishReport publish(PublicationPlan plan) {
+        return Impl.run(plan.getPlan(), null, null, cache);
+    }
+
+    /**
+     * Publish a plan with other options, for example a complete site and a raw variant of the same pages. The page tree, the titles, the site name and the home link are the ones of the plan, so the options used during the planning
+     * (<code>pagesBaseFolder</code>, <code>siteHomePath</code>) are not considered. The catalogs are only written when the output folder is the one of the plan.
+     *
+     * @param plan
+     *            the plan computed by {@link #plan(ConfigurationHolder)}.
+     * @param outputRootFolder
+     *            the output folder of this publication.
+     * @param options
+     *            the options of this publication.
+     * @return the report of the publication.
+     */
+    public PublishReport publish(PublicationPlan plan, Path outputRootFolder, ConfigurationOptions options) {
+        return Impl.run(plan.getPlan(), outputRootFolder, options, cache);
+    }
+
+    /**
+     * Render a single page of a plan, exactly as {@link #publish(PublicationPlan)} would publish it (navigation, breadcrumbs, previous and next pages included). This is intended for previews: the page is rendered when it is
+     * requested, without publishing the complete tree.
+     * <p>
+     * The resources referenced by the page (images, css, javascript, site resources) are copied to the output folder of the plan, so that the relative links of the rendered page can be served from there. The page itself is
+     * only written to the stream.
+     *
+     * @param plan
+     *            the plan computed by {@link #plan(ConfigurationHolder)}.
+     * @param path
+     *            input or output file of the page, absolute or relative to the input root folder or to the output root folder. A folder designates its <code>index.html</code> file.
+     * @param out
+     *            the stream where the page is written. It is not closed.
+     */
+    public void renderPage(PublicationPlan plan, Path path, OutputStream out) {
+        Impl.renderPage(plan.getPlan(), path, out, cache);
+    }
+
+    /**
+     * Publish all the pages and then republish them each time the input files are modified.
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @return the watcher, that must be closed to stop watching the input folders.
+     */
+    public PublishWatcher watch(ConfigurationHolder configuration) {
+        return watch(configuration, DEFAULT_DEBOUNCE);
+    }
+
+    /**
+     * Publish all the pages and then republish them each time the input files are modified. Only the modified pages and the pages using a modified resource file are rendered again, except when the page tree or a title
+     * displayed in the navigation changes.
+     *
+     * @param configuration
+     *            the holder containing the configuration.
+     * @param debounce
+     *            the pages are republished once no modification was detected during this duration.
+     * @return the watcher, that must be closed to stop watching the input folders.
+     */
+    public PublishWatcher watch(ConfigurationHolder configuration, Duration debounce) {
+        return new PublishWatcher(new Watcher(configuration, cache, debounce));
+    }
+}
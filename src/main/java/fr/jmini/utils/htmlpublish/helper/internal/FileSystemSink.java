@@ -0,0 +1,52 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import fr.jmini.utils.htmlpublish.helper.OutputSink;
+
+/**
+ * Write the files to the output folder, or to the staging folder when the publication is staged (see {@link Parameters#toStagingFile(Path)}).
+ */
+class FileSystemSink implements OutputSink {
+
+    private final Parameters param;
+
+    FileSystemSink(Parameters param) {
+        this.param = param;
+    }
+
+    @Override
+    public boolean exists(Path file) {
+        return Files.exists(param.toStagingFile(file));
+    }
+
+    @Override
+    public void write(Path file, byte[] content) throws IOException {
+        Path target = param.toStagingFile(file);
+        Impl.createFolders(target.getParent());
+        Files.write(target, content);
+    }
+
+    @Override
+    public void copy(Path source, Path file) throws IOException {
+        Path target = param.toStagingFile(file);
+        Impl.createFolders(target.getParent());
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public List<Path> listFiles(Path folder) throws IOException {
+        Path target = param.toStagingFile(folder);
+        try (Stream<Path> walk = Files.walk(target)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(path -> folder.resolve(target.relativize(path)))
+                    .collect(Collectors.toList());
+        }
+    }
+}
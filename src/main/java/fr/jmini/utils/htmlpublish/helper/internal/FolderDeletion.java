@@ -0,0 +1,105 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delete a folder and its content. The sub-folders are deleted in parallel (post-order: the content of a folder is deleted before the folder itself), the paths are never collected or sorted. Symbolic links are deleted, not
+ * followed.
+ */
+class FolderDeletion {
+
+    /**
+     * Maximum number of errors kept as suppressed exceptions of the reported error.
+     */
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final Queue<IOException> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private FolderDeletion() {
+    }
+
+    /**
+     * Delete the folder and its content.
+     *
+     * @throws IllegalStateException
+     *             when some files or folders could not be deleted (after trying to delete all the others).
+     */
+    static void delete(Path folder) {
+        if (!Files.exists(folder, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        FolderDeletion deletion = new FolderDeletion();
+        ForkJoinPool.commonPool()
+                .invoke(deletion.new DeleteTask(folder));
+        long count = deletion.errorCount.get();
+        if (count > 0) {
+            IOException first = deletion.errors.poll();
+            IllegalStateException exception = new IllegalStateException("Could not delete " + count + " files or folders in: " + folder + " (" + first + ")", first);
+            deletion.errors.forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    private void error(IOException e) {
+        if (errorCount.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+            errors.add(e);
+        }
+    }
+
+    private class DeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+
+        DeleteTask(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        protected void compute() {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                List<DeleteTask> subTasks = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                    for (Path child : stream) {
+                        if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            DeleteTask task = new DeleteTask(child);
+                            task.fork();
+                            subTasks.add(task);
+                        } else {
+                            deleteFile(child);
+                        }
+                    }
+                } catch (IOException e) {
+                    error(e);
+                }
+                for (DeleteTask task : subTasks) {
+                    task.join();
+                }
+            }
+            deleteFile(path);
+        }
+
+        private void deleteFile(Path file) {
+            try {
+                Files.delete(file);
+            } catch (NoSuchFileException e) {
+                // already deleted
+            } catch (IOException e) {
+                error(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import fr.jmini.utils.htmlpublish.helper.ConfigurationOptions;
+
+/**
+ * Write a gzip compressed copy (<code>.gz</code> sibling) of the text files, when the <code>gzipOutputFiles</code> option is set. The content is compressed from the bytes that are written, in parallel with the
+ * publication (on the executor of the {@link PublisherCache}): the pending compressions are awaited at the end of the publishing (see {@link #await(Parameters)}). The compressed copies are written by the background tasks
+ * in the output folder only: for the other sinks (archive, in memory) they are written at the end, in the order of the submissions, so that an archive is reproducible.
+ */
+class GzipSidecars {
+
+    static final String SUFFIX = ".gz";
+
+    private static final Set<String> EXTENSIONS = new HashSet<>(Arrays.asList("html", "css", "js", "svg", "json", "xml", "txt"));
+
+    private GzipSidecars() {
+    }
+
+    /**
+     * @return true when a compressed copy of the file is written.
+     */
+    static boolean isCompressed(ConfigurationOptions options, Path file, long size) {
+        if (!options.isGzipOutputFiles() || size < options.getGzipMinimumSize()) {
+            return false;
+        }
+        String name = file.getFileName()
+                .toString();
+        int index = name.lastIndexOf('.');
+        return index > 0 && EXTENSIONS.contains(name.substring(index + 1)
+                .toLowerCase(Locale.ROOT));
+    }
+
+    static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Compress the content of a file in the background, and write the compressed copy.
+     */
+    static void submit(Parameters param, Path file, byte[] content) {
+        Path sidecar = sidecar(file);
+        param.fileProduced(sidecar);
+        int level = param.getOptions()
+                .getGzipLevel();
+        ExecutorService executor = param.getCache()
+                .getExecutor();
+        if (param.getSink() instanceof FileSystemSink) {
+            Future<?> task = executor.submit(() -> write(param, sidecar, compress(content, level)));
+            param.addPendingTask(() -> join(task));
+        } else {
+            Future<byte[]> task = executor.submit(() -> compress(content, level));
+            param.addPendingTask(() -> write(param, sidecar, join(task)));
+        }
+    }
+
+    private static <T> T join(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+            throw new IllegalStateException("Interrupted while compressing the output files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not compress the output files", e.getCause());
+        }
+    }
+
+    private static void write(Parameters param, Path sidecar, byte[] compressed) {
+        ReportCollector report = param.getReport();
+        if (Impl.keepUnchanged(param, sidecar, compressed)) {
+            report.fileSkipped();
+            return;
+        }
+        try {
+            param.getSink()
+                    .write(sidecar, compressed);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write file: " + sidecar, e);
+        }
+        report.addBytesWritten(compressed.length);
+    }
+
+    /**
+     * @return the gzip content, the header does not contain a modification time so that the same content is always compressed to the same bytes.
+     */
+    static byte[] compress(byte[] content, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not compress the content", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Wait for the pending compressions of the publication, and write the compressed copies that are not written in the background.
+     *
+     * @throws IllegalStateException
+     *             when a compressed copy could not be written (the other errors are suppressed exceptions).
+     */
+    static void await(Parameters param) {
+        RuntimeException error = null;
+        Runnable completion;
+        while ((completion = param.pollPendingTask()) != null) {
+            try {
+                completion.run();
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.DocumentType;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+/**
+ * Compact a document that is serialized without pretty printing (<code>compactOutput</code> option): the comments are removed (except the conditional comments) and the whitespace of the text is collapsed to a single
+ * space, as a browser displays it. Whitespace only text between block elements is removed. The content of the <code>pre</code>, <code>code</code> and <code>textarea</code> elements is kept intact.
+ */
+class HtmlCompactor {
+
+    private static final Set<String> PRESERVED_TAGS = new HashSet<>(Arrays.asList("pre", "code", "textarea", "script", "style"));
+
+    /**
+     * Whitespace collapsed by the browsers (the non-breaking space is not part of it).
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("[ \t\n\f\r]+");
+
+    private HtmlCompactor() {
+    }
+
+    static void compact(Node root) {
+        // the children are copied because some of them are removed:
+        for (Node child : new ArrayList<>(root.childNodes())) {
+            if (child instanceof Comment && !isConditionalComment((Comment) child)) {
+                child.remove();
+            }
+        }
+        // the texts that were separated by a comment are merged:
+        for (Node child : new ArrayList<>(root.childNodes())) {
+            Node previous = child.previousSibling();
+            if (child instanceof TextNode && previous instanceof TextNode) {
+                ((TextNode) previous).text(((TextNode) previous).getWholeText() + ((TextNode) child).getWholeText());
+                child.remove();
+            }
+        }
+        for (Node child : new ArrayList<>(root.childNodes())) {
+            if (child instanceof TextNode) {
+                compactText((TextNode) child);
+            } else if (child instanceof Element && !PRESERVED_TAGS.contains(((Element) child).tagName())) {
+                compact(child);
+            }
+        }
+    }
+
+    private static boolean isConditionalComment(Comment comment) {
+        String data = comment.getData();
+        return data.startsWith("[if") || data.startsWith("<![endif");
+    }
+
+    private static void compactText(TextNode node) {
+        String text = node.getWholeText();
+        String collapsed = WHITESPACE.matcher(text)
+                .replaceAll(" ");
+        if (" ".equals(collapsed) && (isHead(node.parent()) || (isBlockBoundary(node.parent()) && isBlockBoundary(node.previousSibling()) && isBlockBoundary(node.nextSibling())))) {
+            node.remove();
+        } else if (!collapsed.equals(text)) {
+            node.text(collapsed);
+        }
+    }
+
+    /**
+     * @return true for the head element, where the text is not displayed.
+     */
+    private static boolean isHead(Node node) {
+        return node instanceof Element && "head".equals(((Element) node).tagName());
+    }
+
+    /**
+     * @return true when a whitespace next to this node (or inside this parent node) is not displayed.
+     */
+    private static boolean isBlockBoundary(Node node) {
+        if (node == null || node instanceof Document || node instanceof DocumentType) {
+            return true;
+        }
+        return node instanceof Element && ((Element) node).isBlock();
+    }
+}
@@ -1,38 +1,54 @@
 package fr.jmini.utils.htmlpublish.helper.internal;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.DocumentType;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
@@ -45,6 +61,10 @@ import fr.jmini.utils.htmlpublish.helper.ConfigurationPage;
 import fr.jmini.utils.htmlpublish.helper.ConfigurationPageOptions;
 import fr.jmini.utils.htmlpublish.helper.IndexHandling;
 import fr.jmini.utils.htmlpublish.helper.LinkToIndexHtmlStrategy;
+import fr.jmini.utils.htmlpublish.helper.OutputSink;
+import fr.jmini.utils.htmlpublish.helper.PublishListener;
+import fr.jmini.utils.htmlpublish.helper.PublishReport;
+import fr.jmini.utils.htmlpublish.helper.PublishReport.Phase;
 import fr.jmini.utils.htmlpublish.helper.RewriteStrategy;
 import fr.jmini.utils.pathorder.AbsolutePathComparator;
 import fr.jmini.utils.pathorder.Order;
@@ -56,6 +76,16 @@ public class Impl {
     private static final String DEFAULT_JS_NAME = "site.js";
     private static final String DEFAULT_CSS_NAME = "site.css";
 
+    private static final Pattern REFERENCE_TAG_PATTERN = Pattern.compile("<(img|image|link|script|a)(?=[\\s/>])((?:[^>\"']|\"[^\"]*\"|'[^']*')*)(>)?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REFERENCE_ATTRIBUTE_PATTERN = Pattern.compile("(?<=^|[\\s/\"'])(src|href|rel)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'=<>`]+))", Pattern.CASE_INSENSITIVE);
+
+    static final PublishListener DEFAULT_LISTENER = new PublishListener() {
+        @Override
+        public void warning(String message) {
+            System.err.println(message);
+        }
+    };
+
     private static final List<String> SITE_IMAGES = Arrays.asList(
             "back.svg",
             "caret.svg",
@@ -78,46 +108,369 @@ public class Impl {
             "roboto-mono-latin-500.woff",
             "roboto-mono-latin-500.woff2");
 
-    public static void run(ConfigurationHolder configuration) {
-        Parameters param = prepareParameters(configuration);
+    /**
+     * Source of a <code>@font-face</code> rule of the default css referencing a woff font, removed when only the woff2 fonts are copied.
+     */
+    private static final Pattern WOFF_FONT_SOURCE_PATTERN = Pattern.compile(",\\s*url\\([^)]*\\.woff\\)\\s*format\\(\"woff\"\\)");
+
+    public static PublishReport run(ConfigurationHolder configuration) {
+        return run(configuration, new PublisherCache());
+    }
+
+    /**
+     * Publish the HTML files. Several publications can run at the same time with the same cache.
+     *
+     * @param configuration
+     *            the configuration, it is not modified.
+     * @param cache
+     *            the caches used by the publication.
+     * @return the report of the publication.
+     */
+    public static PublishReport run(ConfigurationHolder configuration, PublisherCache cache) {
+        return publish(prepareParameters(configuration, cache));
+    }
+
+    /**
+     * Publish only the pages affected by some changed files, with new caches (see {@link #run(ConfigurationHolder, Collection, PublisherCache)}).
+     */
+    public static PublishReport run(ConfigurationHolder configuration, Collection<Path> changedFiles) {
+        return run(configuration, changedFiles, new PublisherCache());
+    }
 
-        clearOutputRootFolder(param);
-        for (PageHolder holder : param.getAllPageHolders()) {
-            if (holder.isInputFileExists()) {
-                publishHtmlFile(param, holder);
+    /**
+     * Publish only the pages affected by some changed files, reusing the output of the previous publication. The manifest written by the previous publication (see {@link ConfigurationHolder#getManifestFile()}) is used to
+     * find the affected pages: the changed pages, the pages using a changed resource file and the pages whose context (output file, page tree, titles in the navigation) has changed. The output files of the removed pages are
+     * deleted. When there is no manifest or when the options have changed, all the pages are published.
+     *
+     * @param configuration
+     *            the configuration, it is not modified.
+     * @param changedFiles
+     *            the changed input files (pages, resources, <code>pages.yaml</code> files). Relative paths are resolved against the working directory.
+     * @param cache
+     *            the caches used by the publication.
+     * @return the report of the publication.
+     */
+    public static PublishReport run(ConfigurationHolder configuration, Collection<Path> changedFiles, PublisherCache cache) {
+        Parameters param = prepareParameters(configuration, cache);
+        if (param.getOutputSink() != null || param.isOutputArchive()) {
+            // the manifest is only written in an output folder, an archive can not be partially updated:
+            return publish(param);
+        }
+        Path manifestFile = configuration.getManifestFile()
+                .map(Path::toAbsolutePath)
+                .orElse(Manifest.file(param.getOutputRootFolder()));
+        Optional<Manifest> previous = Manifest.read(manifestFile, inputFileSystem(param), param.getOutputRootFolder()
+                .getFileSystem());
+        Manifest manifest = Manifest.compute(param);
+        param.setPagesByAsset(manifest.getPagesByAsset());
+        param.setLinksByPage(manifest.getLinksByPage());
+
+        PublishReport report;
+        if (previous.isPresent() && previous.get()
+                .getOptionsFingerprint()
+                .equals(manifest.getOptionsFingerprint())) {
+            Set<Path> changed = Manifest.normalize(new HashSet<>(changedFiles));
+            cache.invalidateFileHashes(changed);
+            Map<Path, Set<Path>> previousPagesByAsset = previous.get()
+                    .getPagesByAsset();
+            Map<Path, String> previousFingerprints = previous.get()
+                    .getPageFingerprints();
+            Map<Path, Set<Path>> previousLinksByPage = previous.get()
+                    .getLinksByPage();
+            Set<Path> pages = new HashSet<>(changed);
+            for (Path file : changed) {
+                pages.addAll(previousPagesByAsset.getOrDefault(file, Collections.emptySet()));
+            }
+            // the links of a page are the ones of its previous publication, unless it is published again:
+            Set<Path> existingPages = new HashSet<>();
+            for (PageHolder holder : param.getAllPageHolders()) {
+                if (holder.isInputFileExists()) {
+                    Path page = Manifest.normalize(holder.getInputFile());
+                    existingPages.add(page);
+                    String fingerprint = manifest.fingerprint(param, holder, previousLinksByPage.getOrDefault(page, Collections.emptySet()));
+                    if (!fingerprint.equals(previousFingerprints.get(page))) {
+                        pages.add(page);
+                    }
+                }
             }
+            // the resources and the links of the pages that are not published again are still used:
+            previousPagesByAsset.forEach((asset, assetPages) -> assetPages.stream()
+                    .filter(page -> !pages.contains(page) && existingPages.contains(page))
+                    .forEach(page -> manifest.getPagesByAsset()
+                            .computeIfAbsent(asset, k -> ConcurrentHashMap.newKeySet())
+                            .add(page)));
+            previousLinksByPage.forEach((page, links) -> {
+                if (!pages.contains(page) && existingPages.contains(page)) {
+                    manifest.getLinksByPage()
+                            .put(page, links);
+                }
+            });
+            param.setForcedCopies(changed);
+            report = publish(param, page -> pages.contains(Manifest.normalize(page.getInputFile())), false, true);
+            manifest.computePageFingerprints(param);
+            deleteOutputFiles(param, manifest.removedOutputFiles(previous.get()));
+        } else {
+            report = publish(param);
+            manifest.computePageFingerprints(param);
         }
-        for (ConfigurationCatalog catalog : param.getCatalogs()) {
-            writeCatalog(param, catalog);
+        manifest.write(manifestFile);
+        return report;
+    }
+
+    /**
+     * @return the file system of the input files, it can be different from the file system of the output folder.
+     */
+    static FileSystem inputFileSystem(Parameters param) {
+        return param.getInputRootFolder() != null ? param.getInputRootFolder()
+                .getFileSystem() : FileSystems.getDefault();
+    }
+
+    /**
+     * Compute the page tree of a publication, without publishing anything.
+     *
+     * @param configuration
+     *            the configuration, it is not modified.
+     * @param cache
+     *            the caches used by the planning.
+     * @return the plan that can be published several times.
+     */
+    public static Plan plan(ConfigurationHolder configuration, PublisherCache cache) {
+        return new Plan(prepareParameters(configuration, cache));
+    }
+
+    /**
+     * Publish a plan. The page tree, the titles and the documents of the plan are reused: the input folders are not scanned and the documents still cached by the plan are not parsed again.
+     *
+     * @param plan
+     *            the plan to publish.
+     * @param outputRootFolder
+     *            the output folder, when null the output folder of the plan is used.
+     * @param options
+     *            the options used for the rendering, when null the options of the plan are used.
+     * @param cache
+     *            the caches used by the publication.
+     * @return the report of the publication.
+     */
+    public static PublishReport run(Plan plan, Path outputRootFolder, ConfigurationOptions options, PublisherCache cache) {
+        return publish(deriveParameters(plan.getParameters(), outputRootFolder, options, cache));
+    }
+
+    /**
+     * Render a single page of a plan, as it would be published by {@link #run(Plan, Path, ConfigurationOptions, PublisherCache)} with the output folder and the options of the plan (navigation, breadcrumbs, previous and next
+     * pages included). The resources referenced by the page are copied to the output folder of the plan, the page itself is only written to the stream.
+     *
+     * @param plan
+     *            the plan containing the page.
+     * @param path
+     *            input or output file of the page (absolute or relative to the input or output root folder).
+     * @param out
+     *            the stream where the page is written, it is not closed.
+     * @param cache
+     *            the caches used for the rendering.
+     */
+    public static void renderPage(Plan plan, Path path, OutputStream out, PublisherCache cache) {
+        // the render parameters are reused, the state of the request (pending compressions, produced files) is kept in its own parameters:
+        Parameters param = plan.getRenderParameters(cache)
+                .forRequest();
+        PageHolder page = plan.findRenderPage(path)
+                .orElseThrow(() -> new IllegalStateException("No page to publish corresponds to the path: " + path));
+        byte[] content;
+        // the rendering modifies the document of the page:
+        synchronized (page) {
+            try {
+                content = renderPage(param, page);
+            } catch (RuntimeException e) {
+                // the pending compressions must not write after the failure:
+                try {
+                    GzipSidecars.await(param);
+                } catch (RuntimeException compressionError) {
+                    e.addSuppressed(compressionError);
+                }
+                throw e;
+            } finally {
+                page.releaseDocument();
+            }
+        }
+        GzipSidecars.await(param);
+        try {
+            out.write(content);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the page: " + page.getOutputFile(), e);
+        }
+    }
+
+    private static PublishReport publish(Parameters param) {
+        return publish(param, page -> true, true, true);
+    }
+
+    /**
+     * @param filter
+     *            selects the pages that are published
+     * @param clearOutput
+     *            when true, the output folder is cleared first (if configured in the options)
+     * @param writeCatalogs
+     *            when true, the catalogs are written
+     */
+    static PublishReport publish(Parameters param, Predicate<PageHolder> filter, boolean clearOutput, boolean writeCatalogs) {
+        ReportCollector report = param.getReport();
+        PublishListener listener = param.getListener();
+
+        List<PageHolder> pages = param.getAllPageHolders()
+                .stream()
+                .filter(PageHolder::isInputFileExists)
+                .filter(filter)
+                .collect(Collectors.toList());
+        listener.planningCompleted(pages.size());
+
+        if (param.getOutputSink() != null) {
+            // the options related to the output folder are not relevant:
+            publishToSink(param, param.getOutputSink(), pages, writeCatalogs);
+            return report.toReport();
+        }
+        if (param.isOutputArchive()) {
+            // the archive is always written completely, the options related to the output folder are not relevant:
+            ZipSink sink;
+            try {
+                sink = new ZipSink(param.getOutputRootFolder());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create archive: " + param.getOutputRootFolder(), e);
+            }
+            param.setSink(sink);
+            publishToSink(param, sink, pages, writeCatalogs);
+            return report.toReport();
+        }
+        boolean staged = clearOutput && param.getOptions()
+                .isStagedPublishing();
+        boolean sync = clearOutput && !staged && param.getOptions()
+                .isSyncOutputRootFolder();
+        if (staged) {
+            prepareStagingFolder(param);
+        } else if (clearOutput && !sync) {
+            clearOutputRootFolder(param);
+        }
+        try {
+            publishPages(param, pages, writeCatalogs);
+        } catch (RuntimeException e) {
+            if (staged) {
+                // the previous output is kept:
+                try {
+                    FolderDeletion.delete(param.getStagingFolder());
+                } catch (IllegalStateException deletionError) {
+                    e.addSuppressed(deletionError);
+                }
+                param.setStagingFolder(null);
+            }
+            throw e;
+        }
+        if (staged) {
+            report.startPhase();
+            try {
+                swapStagingFolder(param);
+            } finally {
+                report.endPhase(Phase.WRITING);
+            }
+        }
+        if (sync) {
+            report.startPhase();
+            try {
+                deleteStaleOutputFiles(param);
+            } finally {
+                report.endPhase(Phase.WRITING);
+            }
+        }
+        return report.toReport();
+    }
+
+    private static void publishToSink(Parameters param, OutputSink sink, List<PageHolder> pages, boolean writeCatalogs) {
+        try {
+            publishPages(param, pages, writeCatalogs);
+            sink.finish();
+        } catch (IOException e) {
+            sink.abort();
+            throw new IllegalStateException("Could not write output: " + param.getOutputRootFolder(), e);
+        } catch (RuntimeException e) {
+            sink.abort();
+            throw e;
+        }
+    }
+
+    private static void publishPages(Parameters param, List<PageHolder> pages, boolean writeCatalogs) {
+        ReportCollector report = param.getReport();
+        try {
+            publishPagesAndCatalogs(param, pages, writeCatalogs);
+        } catch (RuntimeException e) {
+            // the pending compressions must not write after the failure:
+            try {
+                GzipSidecars.await(param);
+            } catch (RuntimeException compressionError) {
+                e.addSuppressed(compressionError);
+            }
+            throw e;
+        }
+        report.startPhase();
+        try {
+            GzipSidecars.await(param);
+        } finally {
+            report.endPhase(Phase.WRITING);
+        }
+    }
+
+    private static void publishPagesAndCatalogs(Parameters param, List<PageHolder> pages, boolean writeCatalogs) {
+        ReportCollector report = param.getReport();
+        PublishListener listener = param.getListener();
+        for (PageHolder holder : pages) {
+            listener.pageStarted(holder.getInputFile(), holder.getOutputFile());
+            long start = System.nanoTime();
+            publishHtmlFile(param, holder);
+            holder.releaseDocument();
+            report.pagePublished(holder, System.nanoTime() - start);
+            listener.pageFinished(holder.getInputFile(), holder.getOutputFile());
+        }
+        if (writeCatalogs) {
+            report.startPhase();
+            try {
+                for (ConfigurationCatalog catalog : param.getCatalogs()) {
+                    writeCatalog(param, catalog);
+                }
+            } finally {
+                report.endPhase(Phase.CATALOGS);
+            }
         }
     }
 
     static Parameters prepareParameters(ConfigurationHolder config) {
-        Parameters param = new Parameters();
+        return prepareParameters(config, new PublisherCache());
+    }
+
+    static Parameters prepareParameters(ConfigurationHolder config, PublisherCache cache) {
+        Parameters param = new Parameters(cache);
+        ReportCollector report = param.getReport();
+        report.startPhase();
+        try {
+            fillParameters(config, param);
+        } finally {
+            report.endPhase(Phase.PLANNING);
+        }
+        return param;
+    }
+
+    /**
+     * Resolve the configuration into the parameters. The configuration is not modified: the options and the catalogs are copied before the default values are set.
+     */
+    private static void fillParameters(ConfigurationHolder config, Parameters param) {
         if (config.getOutputRootFolder() == null) {
             throw new IllegalStateException("The outputRootFolder can not be null");
         }
         param.setOutputRootFolder(config.getOutputRootFolder()
                 .toAbsolutePath());
+        config.getListener()
+                .ifPresent(param::setListener);
+        config.getOutputSink()
+                .ifPresent(param::setOutputSink);
+        param.setOutputArchive(config.isOutputArchive());
 
-        ConfigurationOptions originalOptions = config.getOptions();
-        if (originalOptions != null) {
-            if (originalOptions.getImagesOutputFolder() != null) {
-                originalOptions.setImagesOutputFolder(addTrailingSlash(originalOptions.getImagesOutputFolder()));
-            }
-            if (originalOptions.getJavascriptOutputFolder() != null) {
-                originalOptions.setJavascriptOutputFolder(addTrailingSlash(originalOptions.getJavascriptOutputFolder()));
-            }
-            if (originalOptions.getCssOutputFolder() != null) {
-                originalOptions.setCssOutputFolder(addTrailingSlash(originalOptions.getCssOutputFolder()));
-            }
-            if (originalOptions.getFontOutputFolder() != null) {
-                originalOptions.setFontOutputFolder(addTrailingSlash(originalOptions.getFontOutputFolder()));
-            }
-            if (originalOptions.getLinkToIndexHtmlStrategy() == null) {
-                originalOptions.setLinkToIndexHtmlStrategy(LinkToIndexHtmlStrategy.TO_PARENT_FOLDER);
-            }
-            param.setOptions(originalOptions);
+        if (config.getOptions() != null) {
+            param.setOptions(resolveOptions(config.getOptions()));
         }
 
         ConfigurationOptions configOptions = param.getOptions();
@@ -125,9 +478,9 @@ public class Impl {
             param.setInputRootFolder(config.getInputRootFolder()
                     .toAbsolutePath());
 
-            param.setDefaultPageOptions(fixPageOptionsDefaultValues(
-                    config.getDefaultPageOptions()
-                            .orElse(new ConfigurationPageOptions())));
+            ConfigurationPageOptions defaultPageOptions = config.getDefaultPageOptions()
+                    .orElse(new ConfigurationPageOptions());
+            param.setDefaultPageOptions(createPageOptions(param, defaultPageOptions.getIndexHandling(), defaultPageOptions.getTitleSelector(), defaultPageOptions.getSitePageSelector()));
 
             List<PageMapping> pageMappings;
             List<ConfigurationPage> pages = config.getPages();
@@ -136,15 +489,20 @@ public class Impl {
             } else {
                 pageMappings = createPageMappings(param, pages);
             }
-            List<PageHolder> pageHolders = createPageHolders(pageMappings, null, configOptions.getLinkToIndexHtmlStrategy());
+            List<PageHolder> pageHolders = createPageHolders(pageMappings, null, configOptions.getLinkToIndexHtmlStrategy(), param.getReport());
             setPreviousAndNext(pageHolders);
             param.setPageHolders(pageHolders);
         }
         if (config.getCatalogs() != null) {
-            for (ConfigurationCatalog catalog : config.getCatalogs()) {
-                if (catalog.getOutputFile() == null) {
+            for (ConfigurationCatalog configCatalog : config.getCatalogs()) {
+                if (configCatalog.getOutputFile() == null) {
                     throw new IllegalStateException("The outputFile in the catalog can not be null");
                 }
+                ConfigurationCatalog catalog = new ConfigurationCatalog()
+                        .folder(configCatalog.getFolder())
+                        .strategy(configCatalog.getStrategy())
+                        .outputFile(configCatalog.getOutputFile())
+                        .outputAction(configCatalog.getOutputAction());
                 if (catalog.getFolder() == null) {
                     catalog.setFolder(param.getOutputRootFolder());
                 }
@@ -158,6 +516,10 @@ public class Impl {
             }
         }
 
+        if (configOptions.isCompleteSite()) {
+            param.setPageTemplate(PageTemplate.compile(configOptions));
+        }
+
         if (configOptions.getSiteName() != null) {
             param.setSiteName(configOptions.getSiteName());
         }
@@ -191,9 +553,163 @@ public class Impl {
                 }
             }
         }
+    }
+
+    /**
+     * Compute the plan of a publication again, after some input files have changed. The documents of the pages that have not changed are taken from the previous plan instead of being parsed again.
+     */
+    static Plan replan(Plan previous, ConfigurationHolder configuration, Set<Path> changedFiles, PublisherCache cache) {
+        Plan plan = plan(configuration, cache);
+        Map<Path, PageHolder> previousPages = new HashMap<>();
+        for (PageHolder page : previous.getParameters()
+                .getAllPageHolders()) {
+            if (page.isInputFileExists()) {
+                previousPages.putIfAbsent(page.getInputFile()
+                        .toAbsolutePath()
+                        .normalize(), page);
+            }
+        }
+        for (PageHolder page : plan.getParameters()
+                .getAllPageHolders()) {
+            if (page.isInputFileExists()) {
+                Path inputFile = page.getInputFile()
+                        .toAbsolutePath()
+                        .normalize();
+                PageHolder previousPage = previousPages.get(inputFile);
+                if (previousPage != null && !changedFiles.contains(inputFile)) {
+                    page.adoptDocument(previousPage);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return a description of the page tree (order, depth, input and output files), used to detect changes of the tree shape.
+     */
+    static List<String> pageTreeShape(Parameters param) {
+        return param.getAllPageHolders()
+                .stream()
+                .map(p -> p.getDepth() + "|" + p.getInputFile() + "|" + p.isInputFileExists() + "|" + p.getOutputFile())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Derive the parameters of a publication from the parameters of a plan. The page tree is copied, the pages of the copy take their documents and titles from the pages of the plan.
+     */
+    static Parameters deriveParameters(Parameters plan, Path outputRootFolder, ConfigurationOptions options, PublisherCache cache) {
+        Parameters param = new Parameters(cache);
+        ReportCollector report = param.getReport();
+        report.startPhase();
+        try {
+            Path planOutputRootFolder = plan.getOutputRootFolder();
+            Path newOutputRootFolder = outputRootFolder == null ? planOutputRootFolder : outputRootFolder.toAbsolutePath();
+            param.setOutputRootFolder(newOutputRootFolder);
+            param.setInputRootFolder(plan.getInputRootFolder());
+            param.setListener(plan.getListener());
+            param.setOutputSink(plan.getOutputSink());
+            param.setOutputArchive(plan.isOutputArchive());
+            param.setOptions(options == null ? plan.getOptions() : resolveOptions(options));
+            param.setDefaultPageOptions(plan.getDefaultPageOptions());
+
+            ConfigurationOptions configOptions = param.getOptions();
+            Map<PageHolder, PageHolder> derivedPages = new IdentityHashMap<>();
+            List<PageHolder> pageHolders = derivePageHolders(plan.getPageHolders(), null, planOutputRootFolder, newOutputRootFolder, configOptions.getLinkToIndexHtmlStrategy(), report, derivedPages);
+            setPreviousAndNext(pageHolders);
+            param.setPageHolders(pageHolders);
+
+            // catalogs are only written when the plan is published to its own output folder:
+            if (Objects.equals(planOutputRootFolder, newOutputRootFolder)) {
+                param.setCatalogs(plan.getCatalogs());
+            }
+            if (configOptions.isCompleteSite()) {
+                param.setPageTemplate(PageTemplate.compile(configOptions));
+            }
+            param.setSiteName(configOptions.getSiteName() != null ? configOptions.getSiteName() : plan.getSiteName());
+            Link siteHomeLink = plan.getSiteHomeLink();
+            if (siteHomeLink instanceof PageHolder) {
+                param.setSiteHomeLink(derivedPages.get(siteHomeLink));
+            } else {
+                param.setSiteHomeLink(siteHomeLink);
+            }
+        } finally {
+            report.endPhase(Phase.PLANNING);
+        }
         return param;
     }
 
+    private static List<PageHolder> derivePageHolders(List<PageHolder> sources, PageHolder parent, Path planOutputRootFolder, Path outputRootFolder, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy, ReportCollector report, Map<PageHolder, PageHolder> derivedPages) {
+        List<PageHolder> result = new ArrayList<>();
+        for (PageHolder source : sources) {
+            PageMapping sourceMapping = source.getPageMapping();
+            Path outputFile = sourceMapping.getOutputFile();
+            if (outputFile != null && !Objects.equals(planOutputRootFolder, outputRootFolder)) {
+                outputFile = outputRootFolder.resolve(planOutputRootFolder.relativize(outputFile));
+            }
+            PageMapping mapping = new PageMapping(sourceMapping.getInputFile(), sourceMapping.isInputFileExists(), outputFile, sourceMapping.getPageOptions(), sourceMapping.getTitle(), Collections.emptyList());
+            PageHolder pageHolder = new PageHolder(mapping, parent, source.isUniqueRoot(), linkToIndexHtmlStrategy, report, source);
+            derivedPages.put(source, pageHolder);
+            pageHolder.setChildren(derivePageHolders(source.getChildren(), pageHolder, planOutputRootFolder, outputRootFolder, linkToIndexHtmlStrategy, report, derivedPages));
+            result.add(pageHolder);
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the options, with the default values set.
+     */
+    static ConfigurationOptions resolveOptions(ConfigurationOptions original) {
+        ConfigurationOptions options = copyOptions(original);
+        if (options.getImagesOutputFolder() != null) {
+            options.setImagesOutputFolder(addTrailingSlash(options.getImagesOutputFolder()));
+        }
+        if (options.getJavascriptOutputFolder() != null) {
+            options.setJavascriptOutputFolder(addTrailingSlash(options.getJavascriptOutputFolder()));
+        }
+        if (options.getCssOutputFolder() != null) {
+            options.setCssOutputFolder(addTrailingSlash(options.getCssOutputFolder()));
+        }
+        if (options.getFontOutputFolder() != null) {
+            options.setFontOutputFolder(addTrailingSlash(options.getFontOutputFolder()));
+        }
+        if (options.getLinkToIndexHtmlStrategy() == null) {
+            options.setLinkToIndexHtmlStrategy(LinkToIndexHtmlStrategy.TO_PARENT_FOLDER);
+        }
+        if (options.getGzipLevel() < Deflater.BEST_SPEED || options.getGzipLevel() > Deflater.BEST_COMPRESSION) {
+            throw new IllegalStateException("The gzipLevel must be between 1 and 9: " + options.getGzipLevel());
+        }
+        return options;
+    }
+
+    static ConfigurationOptions copyOptions(ConfigurationOptions options) {
+        return new ConfigurationOptions()
+                .clearOutputRootFolder(options.isClearOutputRootFolder())
+                .skipUnchangedOutputFiles(options.isSkipUnchangedOutputFiles())
+                .syncOutputRootFolder(options.isSyncOutputRootFolder())
+                .stagedPublishing(options.isStagedPublishing())
+                .gzipOutputFiles(options.isGzipOutputFiles())
+                .gzipLevel(options.getGzipLevel())
+                .gzipMinimumSize(options.getGzipMinimumSize())
+                .compactOutput(options.isCompactOutput())
+                .optimizeThemeResources(options.isOptimizeThemeResources())
+                .pagesBaseFolder(options.getPagesBaseFolder())
+                .linkToIndexHtmlStrategy(options.getLinkToIndexHtmlStrategy())
+                .imagesOutputFolder(options.getImagesOutputFolder())
+                .javascriptOutputFolder(options.getJavascriptOutputFolder())
+                .cssOutputFolder(options.getCssOutputFolder())
+                .fontOutputFolder(options.getFontOutputFolder())
+                .resourcesRewriteStrategy(options.getResourcesRewriteStrategy())
+                .completeSite(options.isCompleteSite())
+                .includeDefaultCss(options.isIncludeDefaultCss())
+                .includeOriginalCss(options.isIncludeOriginalCss())
+                .includeDefaultJs(options.isIncludeDefaultJs())
+                .includeOriginalJs(options.isIncludeOriginalJs())
+                .createToc(options.isCreateToc())
+                .siteName(options.getSiteName())
+                .siteHomePath(options.getSiteHomePath())
+                .footer(options.getFooter());
+    }
+
     private static void setPreviousAndNext(List<PageHolder> pageHolders) {
         List<PageHolder> allPageHolders = pageHolders.stream()
                 .flatMap(PageHolder::flattened)
@@ -232,46 +748,29 @@ public class Impl {
         }
     }
 
-    private static List<PageHolder> createPageHolders(List<PageMapping> pageMappings, PageHolder parent, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy) {
+    private static List<PageHolder> createPageHolders(List<PageMapping> pageMappings, PageHolder parent, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy, ReportCollector report) {
         boolean uniqueRoot = (parent == null && pageMappings.size() == 1);
         List<PageHolder> pageHolders = pageMappings.stream()
-                .map(m -> createPageHolder(m, parent, uniqueRoot, linkToIndexHtmlStrategy))
+                .map(m -> createPageHolder(m, parent, uniqueRoot, linkToIndexHtmlStrategy, report))
                 .collect(Collectors.toList());
         return pageHolders;
     }
 
-    private static PageHolder createPageHolder(PageMapping pageMapping, PageHolder parent, boolean uniqueRoot, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy) {
-        if (pageMapping.isInputFileExists()) {
-            Document doc = createDocument(pageMapping.getInputFile());
-            String title;
-            if (pageMapping.getTitle() == null) {
-                title = readTitleFromDoc(doc, pageMapping.getPageOptions(), pageMapping.getInputFile());
-            } else {
-                title = null;
-            }
-            PageHolder pageHolder = new PageHolder(pageMapping, parent, uniqueRoot, doc, title, linkToIndexHtmlStrategy);
-            pageHolder.setChildren(createPageHolders(pageMapping.getChildren(), pageHolder, linkToIndexHtmlStrategy));
-            return pageHolder;
-        }
-
-        PageHolder pageHolder = new PageHolder(pageMapping, parent, uniqueRoot, null, null, linkToIndexHtmlStrategy);
-        pageHolder.setChildren(createPageHolders(pageMapping.getChildren(), pageHolder, linkToIndexHtmlStrategy));
+    private static PageHolder createPageHolder(PageMapping pageMapping, PageHolder parent, boolean uniqueRoot, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy, ReportCollector report) {
+        // the document and the title are loaded lazily: pages that are copied as is are never parsed
+        PageHolder pageHolder = new PageHolder(pageMapping, parent, uniqueRoot, linkToIndexHtmlStrategy, report);
+        pageHolder.setChildren(createPageHolders(pageMapping.getChildren(), pageHolder, linkToIndexHtmlStrategy, report));
         return pageHolder;
     }
 
-    private static Document createDocument(Path path) {
+    static Document createDocument(Path path) {
         String content = readFile(path);
         return Jsoup.parse(content);
     }
 
-    private static String readTitleFromDoc(Document doc, ConfigurationPageOptions pageOptions, Path inputFile) {
+    static String readTitleFromDoc(Document doc, PageOptions pageOptions, Path inputFile) {
         String title;
-        String selector = pageOptions
-                .getTitleSelector();
-        if (selector == null) {
-            selector = "title";
-        }
-        Element element = doc.selectFirst(selector);
+        Element element = pageOptions.selectTitle(doc);
         if (element != null) {
             title = element.text();
         } else {
@@ -285,34 +784,258 @@ public class Impl {
     static void clearOutputRootFolder(Parameters param) {
         ConfigurationOptions options = param.getOptions();
         if (Files.exists(param.getOutputRootFolder()) && options.isClearOutputRootFolder()) {
-            try (Stream<Path> stream = Files.walk(param.getOutputRootFolder())) {
-                stream.sorted(Comparator.reverseOrder())
-                        .map(Path::toFile)
-                        .forEach(File::delete);
+            // the output of a previous staged publication is a link to a release folder, both are deleted:
+            Path releaseFolder = releaseFolderOf(param.getOutputRootFolder());
+            FolderDeletion.delete(param.getOutputRootFolder());
+            if (releaseFolder != null) {
+                FolderDeletion.delete(releaseFolder);
+            }
+        }
+    }
+
+    /**
+     * Create an empty staging folder, sibling of the output folder: the publication is done in this folder.
+     */
+    static void prepareStagingFolder(Parameters param) {
+        Path outputRootFolder = param.getOutputRootFolder();
+        Path stagingFolder = outputRootFolder.resolveSibling(outputRootFolder.getFileName() + ".staging");
+        if (Files.exists(stagingFolder)) {
+            // left by an interrupted publication
+            FolderDeletion.delete(stagingFolder);
+        }
+        try {
+            Files.createDirectories(stagingFolder);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create folder: " + stagingFolder, e);
+        }
+        param.setStagingFolder(stagingFolder);
+    }
+
+    /**
+     * Replace the output folder with the staging folder. The staging folder is renamed to a release folder (<code>&lt;outputRootFolder&gt;.release-&lt;n&gt;</code>) and the output folder becomes a symbolic link to it: a
+     * symbolic link is replaced atomically, so the output folder always exists. The previous release folder is deleted afterwards.
+     * <p>
+     * When the output folder is a real folder (first staged publication) or when the file system does not support symbolic links, the output folder is first renamed and the new output is then renamed to the output
+     * folder: the output folder does not exist between the two renames.
+     */
+    static void swapStagingFolder(Parameters param) {
+        Path outputRootFolder = param.getOutputRootFolder();
+        Path stagingFolder = param.getStagingFolder();
+        Path previousFolder = outputRootFolder.resolveSibling(outputRootFolder.getFileName() + ".previous");
+        Path linkFile = outputRootFolder.resolveSibling(outputRootFolder.getFileName() + ".link");
+        Path releaseFolder = newReleaseFolder(outputRootFolder);
+        Path previousRelease = releaseFolderOf(outputRootFolder);
+        try {
+            if (Files.exists(previousFolder)) {
+                FolderDeletion.delete(previousFolder);
+            }
+            Path newOutput;
+            if (createSymbolicLink(linkFile, releaseFolder.getFileName())) {
+                Files.move(stagingFolder, releaseFolder, StandardCopyOption.ATOMIC_MOVE);
+                newOutput = linkFile;
+            } else {
+                newOutput = stagingFolder;
+            }
+            if (Files.isSymbolicLink(outputRootFolder) && newOutput == linkFile) {
+                // rename(2) replaces the previous link atomically:
+                Files.move(linkFile, outputRootFolder, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                if (Files.exists(outputRootFolder, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.move(outputRootFolder, previousFolder, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(newOutput, outputRootFolder, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not move the folder '" + stagingFolder + "' to '" + outputRootFolder + "'", e);
+        }
+        param.setStagingFolder(null);
+        try {
+            FolderDeletion.delete(previousFolder);
+            if (previousRelease != null) {
+                FolderDeletion.delete(previousRelease);
+            }
+        } catch (IllegalStateException e) {
+            // the new output is in place
+            param.getListener()
+                    .warning(e.getMessage());
+        }
+    }
+
+    /**
+     * @return true when the link was created, false when the file system does not support symbolic links.
+     */
+    private static boolean createSymbolicLink(Path link, Path target) {
+        try {
+            // left by an interrupted publication:
+            Files.deleteIfExists(link);
+            Files.createSymbolicLink(link, target);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static Path newReleaseFolder(Path outputRootFolder) {
+        long version = System.currentTimeMillis();
+        Path result;
+        do {
+            result = outputRootFolder.resolveSibling(outputRootFolder.getFileName() + ".release-" + version++);
+        } while (Files.exists(result, LinkOption.NOFOLLOW_LINKS));
+        return result;
+    }
+
+    /**
+     * @return the release folder targeted by the output folder when it is a symbolic link created by a staged publication, null otherwise (a link created by the user is never followed to delete its target).
+     */
+    static Path releaseFolderOf(Path outputRootFolder) {
+        if (!Files.isSymbolicLink(outputRootFolder)) {
+            return null;
+        }
+        try {
+            Path target = Files.readSymbolicLink(outputRootFolder);
+            String prefix = outputRootFolder.getFileName() + ".release-";
+            if (target.getNameCount() == 1 && target.getFileName()
+                    .toString()
+                    .startsWith(prefix)) {
+                return outputRootFolder.resolveSibling(target);
+            }
+        } catch (IOException e) {
+            // not a link created by a staged publication
+        }
+        return null;
+    }
+
+    /**
+     * Delete the files of the output folder that were not produced by the publication, and the folders that are empty afterwards.
+     */
+    static void deleteStaleOutputFiles(Parameters param) {
+        Path outputRootFolder = param.getOutputRootFolder()
+                .toAbsolutePath()
+                .normalize();
+        if (!Files.isDirectory(outputRootFolder)) {
+            return;
+        }
+        Set<Path> producedFiles = param.getProducedFiles();
+        PublishListener listener = param.getListener();
+        // the output folder can be a symbolic link (see swapStagingFolder(..)), the files are recorded with their path in the output folder:
+        Path walkedFolder;
+        try {
+            walkedFolder = outputRootFolder.toRealPath();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not resolve the folder: " + outputRootFolder, e);
+        }
+        // post-order traversal: the content of a folder is visited before the folder itself, the paths are never collected or sorted
+        try {
+            Files.walkFileTree(walkedFolder, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!producedFiles.contains(outputRootFolder.resolve(walkedFolder.relativize(file)))) {
+                        delete(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    listener.warning("Could not visit the output file '" + file + "': " + e);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (e != null) {
+                        listener.warning("Could not list the files of the folder '" + dir + "': " + e);
+                    } else if (!dir.equals(walkedFolder) && isEmptyFolder(dir)) {
+                        delete(dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void delete(Path path) {
+                    try {
+                        Files.delete(path);
+                    } catch (IOException e) {
+                        listener.warning("Could not delete the stale output file '" + path + "': " + e);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not list the files of the folder: " + outputRootFolder, e);
+        }
+    }
+
+    /**
+     * Delete some output files of the pages (and their compressed copies), with the folders that are left empty inside the output folder.
+     */
+    static void deleteOutputFiles(Parameters param, Set<Path> files) {
+        Path outputRootFolder = param.getOutputRootFolder()
+                .toAbsolutePath()
+                .normalize();
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(GzipSidecars.sidecar(file));
+                Path folder = file.getParent();
+                while (folder != null && folder.startsWith(outputRootFolder) && !folder.equals(outputRootFolder) && isEmptyFolder(folder)) {
+                    Files.delete(folder);
+                    folder = folder.getParent();
+                }
             } catch (IOException e) {
-                e.printStackTrace();
+                param.getListener()
+                        .warning("Could not delete the output file of a removed page '" + file + "': " + e);
             }
         }
     }
 
-    private static ConfigurationPageOptions mergePageOption(ConfigurationPageOptions defaultPageOptions, ConfigurationPageOptions pageOptions) {
-        if (pageOptions.getIndexHandling() == null) {
-            pageOptions.setIndexHandling(defaultPageOptions.getIndexHandling());
+    private static boolean isEmptyFolder(Path dir) {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            return !children.iterator()
+                    .hasNext();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static PageOptions mergePageOption(Parameters param, PageOptions defaultPageOptions, ConfigurationPageOptions pageOptions) {
+        IndexHandling indexHandling = pageOptions.getIndexHandling();
+        if (indexHandling == null) {
+            indexHandling = defaultPageOptions.getIndexHandling();
         }
-        if (pageOptions.getTitleSelector() == null) {
-            pageOptions.setTitleSelector(defaultPageOptions.getTitleSelector());
+        String titleSelector = pageOptions.getTitleSelector();
+        if (titleSelector == null) {
+            titleSelector = defaultPageOptions.getTitleSelector();
         }
-        if (pageOptions.getSitePageSelector() == null) {
-            pageOptions.setSitePageSelector(defaultPageOptions.getSitePageSelector());
+        String sitePageSelector = pageOptions.getSitePageSelector();
+        if (sitePageSelector == null) {
+            sitePageSelector = defaultPageOptions.getSitePageSelector();
         }
-        return fixPageOptionsDefaultValues(pageOptions);
+        return createPageOptions(param, indexHandling, titleSelector, sitePageSelector);
+    }
+
+    private static PageOptions createPageOptions(Parameters param, IndexHandling indexHandling, String titleSelector, String sitePageSelector) {
+        Evaluator titleEvaluator = compileSelector(param, titleSelector == null ? "title" : titleSelector, "titleSelector");
+        Evaluator sitePageEvaluator = sitePageSelector == null ? null : compileSelector(param, sitePageSelector, "sitePageSelector");
+        return new PageOptions(indexHandling == null ? IndexHandling.USE_PAGE_AS_PARENT : indexHandling, titleSelector, titleEvaluator, sitePageSelector, sitePageEvaluator);
     }
 
-    private static ConfigurationPageOptions fixPageOptionsDefaultValues(ConfigurationPageOptions pageOptions) {
-        if (pageOptions.getIndexHandling() == null) {
-            pageOptions.setIndexHandling(IndexHandling.USE_PAGE_AS_PARENT);
+    /**
+     * Compile a css selector into an evaluator. Each distinct selector is parsed only once, so that invalid selectors are reported when the publication is planned.
+     */
+    static Evaluator compileSelector(Parameters param, String selector, String optionName) {
+        Map<String, Evaluator> compiledSelectors = param.getCompiledSelectors();
+        Evaluator evaluator = compiledSelectors.get(selector);
+        if (evaluator == null) {
+            try {
+                evaluator = QueryParser.parse(selector);
+            } catch (IllegalArgumentException | Selector.SelectorParseException e) {
+                throw new IllegalStateException("Invalid selector '" + selector + "' for the page option '" + optionName + "': " + e.getMessage(), e);
+            }
+            compiledSelectors.put(selector, evaluator);
+        } else {
+            param.getReport()
+                    .cacheHit();
         }
-        return pageOptions;
+        return evaluator;
     }
 
     private static List<PageMapping> createPageMappingsFromRoot(Parameters params) {
@@ -321,7 +1044,7 @@ public class Impl {
                 .includeChildFolders(true);
         String pagesBaseFolder = params.getOptions()
                 .getPagesBaseFolder();
-        return createPageMapping(params.getInputRootFolder(), params.getOutputRootFolder(), pagesBaseFolder, page, params.getDefaultPageOptions(), Collections.emptyList())
+        return createPageMapping(params.getInputRootFolder(), params.getOutputRootFolder(), pagesBaseFolder, params.getListener(), page, params.getDefaultPageOptions(), Collections.emptyList())
                 .map(p -> Collections.singletonList(p))
                 .orElse(Collections.emptyList());
     }
@@ -331,21 +1054,21 @@ public class Impl {
                 .getPagesBaseFolder();
         return list.stream()
                 .map(page -> {
-                    ConfigurationPageOptions pageOptions = mergePageOption(param.getDefaultPageOptions(), page);
+                    PageOptions pageOptions = mergePageOption(param, param.getDefaultPageOptions(), page);
                     List<PageMapping> childrenMappings;
                     if (page.getChildren() != null) {
                         childrenMappings = createPageMappings(param, page.getChildren());
                     } else {
                         childrenMappings = Collections.emptyList();
                     }
-                    return createPageMapping(param.getInputRootFolder(), param.getOutputRootFolder(), pagesBaseFolder, page, pageOptions, childrenMappings);
+                    return createPageMapping(param.getInputRootFolder(), param.getOutputRootFolder(), pagesBaseFolder, param.getListener(), page, pageOptions, childrenMappings);
                 })
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .collect(Collectors.toList());
     }
 
-    private static Optional<PageMapping> createPageMapping(Path inputRootFolder, Path outputRootFolder, String pagesBaseFolder, ConfigurationPage page, ConfigurationPageOptions pageOptions, List<PageMapping> childrenFromConfig) {
+    private static Optional<PageMapping> createPageMapping(Path inputRootFolder, Path outputRootFolder, String pagesBaseFolder, PublishListener listener, ConfigurationPage page, PageOptions pageOptions, List<PageMapping> childrenFromConfig) {
         if (page.getInput() == null) {
             return Optional.of(new PageMapping(null, false, null, pageOptions, page.getTitle(), childrenFromConfig));
         }
@@ -365,14 +1088,14 @@ public class Impl {
                             return isHtmlFile(p);
                         })
                         .map(Path::toAbsolutePath)
-                        .sorted(new AbsolutePathComparator(p -> loadPageOrder(inputRootFolder, pagesBaseFolder, p), null, Order.NATURAL))
+                        .sorted(new AbsolutePathComparator(p -> loadPageOrder(inputRootFolder, pagesBaseFolder, p, listener), null, Order.NATURAL))
                         .map(p -> {
                             if (Files.isDirectory(p)) {
 
                                 ConfigurationPage childPage = new ConfigurationPage()
                                         .input(relativizeToString(inputRootFolder, p))
                                         .includeChildFolders(true);
-                                return createPageMapping(inputRootFolder, outputRootFolder, pagesBaseFolder, childPage, pageOptions, Collections.emptyList());
+                                return createPageMapping(inputRootFolder, outputRootFolder, pagesBaseFolder, listener, childPage, pageOptions, Collections.emptyList());
                             }
                             Path inputFolder;
                             Path outputFolder;
@@ -384,7 +1107,7 @@ public class Impl {
                                 outputFolder = outputRootFolder;
                             }
                             Path inputRelPath = inputFolder.relativize(p);
-                            Path outputPath = outputFolder.resolve(inputRelPath);
+                            Path outputPath = resolve(outputFolder, inputRelPath);
                             return Optional.of(new PageMapping(p, true, outputPath, pageOptions, null, Collections.emptyList()));
                         })
                         .filter(Optional::isPresent)
@@ -416,7 +1139,7 @@ public class Impl {
         }
     }
 
-    static Optional<SortConfig> loadPageOrder(Path inputRootFolder, String pagesBaseFolder, Path inputPath) {
+    static Optional<SortConfig> loadPageOrder(Path inputRootFolder, String pagesBaseFolder, Path inputPath, PublishListener listener) {
         Path path = computePathBasedOnPagesBaseFolder(inputRootFolder, pagesBaseFolder, inputPath);
         if (Files.isDirectory(path)) {
             Path yamlFile = path.resolve("pages.yaml");
@@ -425,9 +1148,9 @@ public class Impl {
                 try (InputStream inputStream = Files.newInputStream(yamlFile)) {
                     return Optional.of(yaml.loadAs(inputStream, Pages.class));
                 } catch (YAMLException e) {
-                    System.err.println("Syntax error in the '" + yamlFile.toAbsolutePath() + "' file");
+                    listener.warning("Syntax error in the '" + yamlFile.toAbsolutePath() + "' file");
                 } catch (IOException e) {
-                    System.err.println("Could not read the '" + yamlFile.toAbsolutePath() + "' file");
+                    listener.warning("Could not read the '" + yamlFile.toAbsolutePath() + "' file");
                 }
             }
         }
@@ -443,18 +1166,19 @@ public class Impl {
         return inputPath;
     }
 
-    private static PageMapping createPageMappingForFile(Path inputRootFolder, Path outputRootFolder, ConfigurationPage page, ConfigurationPageOptions pageOptions, List<PageMapping> childrenFromConfig, Path inputPath) {
+    private static PageMapping createPageMappingForFile(Path inputRootFolder, Path outputRootFolder, ConfigurationPage page, PageOptions pageOptions, List<PageMapping> childrenFromConfig, Path inputPath) {
         Path outputPath;
         if (page.getOutput() != null) {
             if (endsWithHtml(page.getOutput())) {
                 outputPath = outputRootFolder.resolve(page.getOutput());
             } else {
                 outputPath = outputRootFolder.resolve(page.getOutput())
-                        .resolve(inputPath.getFileName());
+                        .resolve(inputPath.getFileName()
+                                .toString());
             }
         } else {
             Path inputRelPath = inputRootFolder.relativize(inputPath);
-            outputPath = outputRootFolder.resolve(inputRelPath);
+            outputPath = resolve(outputRootFolder, inputRelPath);
         }
         boolean regularFile = Files.isRegularFile(inputPath);
         return new PageMapping(inputPath, regularFile, outputPath, pageOptions, page.getTitle(), childrenFromConfig);
@@ -465,20 +1189,50 @@ public class Impl {
     }
 
     static void publishHtmlFile(Parameters param, PageHolder current) {
+        byte[] content = renderPage(param, current);
+        writePage(param, current.getOutputFile(), content);
+    }
+
+    /**
+     * Render a page. The resources referenced by the page are copied to the output folder.
+     *
+     * @return the content of the output file.
+     */
+    static byte[] renderPage(Parameters param, PageHolder current) {
         String relPathToOutputFolder = relativizeToString(current.getOutputFile()
                 .getParent(), param.getOutputRootFolder());
         if (!relPathToOutputFolder.isEmpty()) {
             relPathToOutputFolder = relPathToOutputFolder + "/";
         }
 
-        Document doc = current.getDocument();
-
         ConfigurationOptions options = param.getOptions();
+        ReportCollector report = param.getReport();
+        Set<Path> linkTargets = null;
+        if (param.getLinksByPage() != null) {
+            linkTargets = ConcurrentHashMap.newKeySet();
+            param.getLinksByPage()
+                    .put(Manifest.normalize(current.getInputFile()), linkTargets);
+        }
+        Document doc;
+        if (options.isCompleteSite()) {
+            doc = current.getDocument();
+        } else {
+            byte[] bytes = readFileBytes(current.getInputFile());
+            report.addBytesRead(bytes.length);
+            String content = new String(bytes, StandardCharsets.UTF_8);
+            if (!options.isCompactOutput() && !hasRewritableReference(content)) {
+                // nothing to rewrite, the file is copied byte-for-byte without being parsed:
+                PublishEvent.pageRender(current.getInputFile(), "PASS_THROUGH")
+                        .commit(current.getOutputFile(), bytes.length);
+                return bytes;
+            }
+            doc = current.getDocument(content, bytes.length);
+        }
+
         List<Element> cssElements;
         List<Element> jsElements;
+        report.startPhase();
         try {
-            Files.createDirectories(current.getOutputFile()
-                    .getParent());
             moveAndCopy(doc, current.getInputFile(), param, relPathToOutputFolder, options.getImagesOutputFolder(), "img", (e) -> true, "src");
             if (!options.isCompleteSite() || options.isIncludeOriginalCss()) {
                 cssElements = moveAndCopy(doc, current.getInputFile(), param, relPathToOutputFolder, options.getCssOutputFolder(), "link", (e) -> "stylesheet".equalsIgnoreCase(e.attr("rel")), "href");
@@ -492,63 +1246,125 @@ public class Impl {
             }
         } catch (IOException e) {
             throw new IllegalStateException("Could move file: " + current.getInputFile(), e);
+        } finally {
+            report.endPhase(Phase.ASSET_COPY);
         }
 
-        rewriteLinks(doc, param.getInputRootFolder(), current.getInputFile(), param.getOutputRootFolder(), current.getOutputFile(), param.getPageHolders(), options.getLinkToIndexHtmlStrategy());
+        report.startPhase();
+        try {
+            rewriteLinks(doc, param.getInputRootFolder(), current.getInputFile(), param.getOutputRootFolder(), current.getOutputFile(), param.getOutputFilesByInputFile(), options.getLinkToIndexHtmlStrategy(), linkTargets);
+        } finally {
+            report.endPhase(Phase.LINK_REWRITE);
+        }
 
-        Document outDoc;
+        if (options.isCompactOutput()) {
+            report.startPhase();
+            try {
+                HtmlCompactor.compact(doc);
+            } finally {
+                report.endPhase(Phase.RENDERING);
+            }
+        }
+
+        PublishEvent event = PublishEvent.pageRender(current.getInputFile(), options.isCompleteSite() ? "COMPLETE_SITE" : "SINGLE_PAGE");
+        byte[] content;
         if (options.isCompleteSite()) {
-            Map<String, String> resourceMapping = copyResources(param);
-            final Element elementToInsert;
-            if (current.getPageOptions()
-                    .getSitePageSelector() != null) {
-                Element findElement = doc.selectFirst(current.getPageOptions()
-                        .getSitePageSelector());
-                if (findElement == null) {
-                    elementToInsert = doc.selectFirst("body");
-                } else {
-                    elementToInsert = findElement;
-                }
-            } else {
-                elementToInsert = doc.selectFirst("body");
+            Map<String, String> resourceMapping;
+            report.startPhase();
+            try {
+                resourceMapping = param.getResourceMapping();
+            } finally {
+                report.endPhase(Phase.ASSET_COPY);
             }
 
-            List<Element> additionalElements = new ArrayList<>();
-            addElementsNotInElementToInsert(cssElements, elementToInsert, additionalElements);
-            addElementsNotInElementToInsert(jsElements, elementToInsert, additionalElements);
-            outDoc = createOutDoc(param, relPathToOutputFolder, resourceMapping, current, elementToInsert, additionalElements);
+            report.startPhase();
+            try {
+                content = renderCompletePage(param, current, doc, relPathToOutputFolder, resourceMapping, cssElements, jsElements);
+            } finally {
+                report.endPhase(Phase.RENDERING);
+            }
+        } else {
+            report.startPhase();
+            try {
+                doc.outputSettings()
+                        .charset("ASCII")
+                        .prettyPrint(!options.isCompactOutput());
+                content = doc.toString()
+                        .getBytes(StandardCharsets.UTF_8);
+            } finally {
+                report.endPhase(Phase.RENDERING);
+            }
+        }
+        event.commit(current.getOutputFile(), content.length);
+        return content;
+    }
 
+    private static byte[] renderCompletePage(Parameters param, PageHolder current, Document doc, String relPathToOutputFolder, Map<String, String> resourceMapping, List<Element> cssElements, List<Element> jsElements) {
+        final Element elementToInsert;
+        Element findElement = current.getPageOptions()
+                .selectSitePage(doc);
+        if (findElement == null) {
+            elementToInsert = doc.body();
         } else {
-            outDoc = doc;
+            elementToInsert = findElement;
         }
 
-        outDoc.outputSettings()
-                .charset("ASCII");
-        String content = outDoc.toString();
-        writeFile(current.getOutputFile(), content);
+        List<Element> additionalElements = new ArrayList<>();
+        addElementsNotInElementToInsert(cssElements, elementToInsert, additionalElements);
+        addElementsNotInElementToInsert(jsElements, elementToInsert, additionalElements);
+        return createOutPage(param, relPathToOutputFolder, resourceMapping, current, elementToInsert, additionalElements);
+    }
+
+    private static void writePage(Parameters param, Path file, byte[] content) {
+        ReportCollector report = param.getReport();
+        report.startPhase();
+        try {
+            if (keepUnchanged(param, file, content)) {
+                report.fileSkipped();
+            } else {
+                try {
+                    param.getSink()
+                            .write(file, content);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not write file: " + file, e);
+                }
+                report.addBytesWritten(content.length);
+            }
+            param.fileProduced(file);
+            if (GzipSidecars.isCompressed(param.getOptions(), file, content.length)) {
+                GzipSidecars.submit(param, file, content);
+            }
+        } finally {
+            report.endPhase(Phase.WRITING);
+        }
     }
 
     private static void addElementsNotInElementToInsert(List<Element> elements, final Element elementToInsert, List<Element> additionalElements) {
         elements.stream()
-                .filter(e -> !e.parents()
-                        .contains(elementToInsert))
+                .filter(e -> !isDescendantOf(e, elementToInsert))
                 .forEach(additionalElements::add);
     }
 
-    static Document createOutDoc(Parameters param, String relPathToOutputFolder, Map<String, String> resourceMapping, PageHolder current, Element elementToInsert, List<Element> additionalElements) {
+    static boolean isDescendantOf(Element element, Element ancestor) {
+        Element parent = element.parent();
+        while (parent != null) {
+            if (parent == ancestor) {
+                return true;
+            }
+            parent = parent.parent();
+        }
+        return false;
+    }
+
+    static byte[] createOutPage(Parameters param, String relPathToOutputFolder, Map<String, String> resourceMapping, PageHolder current, Element elementToInsert, List<Element> additionalElements) {
         ConfigurationOptions options = param.getOptions();
 
         String home = param.getSiteHomeLink()
                 .getHrefValue(current.getOutputFile());
 
-        Document doc = new Document("");
-        doc.appendChild(new DocumentType("html", "", ""));
-        Element html = doc.appendElement("html");
-        html.attr("lang", "en");
-        Element head = html.appendElement("head");
-        head.appendElement("meta")
-                .attr("name", "viewport")
-                .attr("content", "width=device-width,initial-scale=1");
+        PageTemplate.Page page = param.getPageTemplate()
+                .newPage();
+        Element head = page.slot(PageTemplate.SLOT_HEAD);
         head.appendElement("title")
                 .text(current.getTitle());
         if (options.isIncludeDefaultCss()) {
@@ -556,36 +1372,11 @@ public class Impl {
                     .attr("rel", "stylesheet")
                     .attr("href", createFilePath(relPathToOutputFolder, resourceMapping.get(DEFAULT_CSS_NAME)));
         }
-        Element body = html.appendElement("body")
-                .addClass("article");
-        body.appendElement("header")
-                .addClass("header")
-                .appendElement("nav")
-                .addClass("navbar")
-                .appendElement("div")
-                .addClass("navbar-brand")
+        page.slot(PageTemplate.SLOT_BRAND)
                 .appendElement("a")
                 .addClass("navbar-item")
                 .attr("href", home)
                 .text(param.getSiteName());
-        Element bodyDiv = body.appendElement("div")
-                .addClass("body");
-        Element nav = bodyDiv.appendElement("div")
-                .addClass("nav-container")
-                .appendElement("aside")
-                .addClass("nav");
-        Element navMenu = nav.appendElement("div")
-                .addClass("panels")
-                .appendElement("div")
-                .addClass("nav-panel-menu")
-                .addClass("is-active")
-                .attr("data-panel", "menu")
-                .appendElement("nav")
-                .addClass("nav-menu");
-        navMenu.appendElement("h3")
-                .addClass("title")
-                .appendElement("a")
-                .attr("href", "#");
         List<PageHolder> pageHolders = param.getPageHolders();
         List<PageHolder> pages;
         if (pageHolders.size() == 1) {
@@ -595,34 +1386,19 @@ public class Impl {
         } else {
             pages = pageHolders;
         }
-        appendNavList(0, pages, current, navMenu);
+        appendNavList(0, pages, current, page.slot(PageTemplate.SLOT_NAV));
 
-        nav.appendElement("div")
-                .addClass("nav-panel-explore")
-                .attr("data-panel", "explore")
-                .appendElement("div")
-                .addClass("context");
-
-        Element main = bodyDiv.appendElement("main")
-                .addClass("article");
-        Element toolbar = main.appendElement("div")
-                .addClass("toolbar")
-                .attr("role", "navigation");
-        toolbar.appendElement("button")
-                .addClass("nav-toggle");
-        Element homeLink = toolbar.appendElement("a")
+        Element homeLink = page.slot(PageTemplate.SLOT_HOME_LINK)
+                .appendElement("a")
                 .addClass("home-link")
                 .attr("href", home);
         if (param.getSiteHomeLink() == current) {
             homeLink.addClass("is-current");
         }
-        Element breadcrumbsList = toolbar.appendElement("nav")
-                .addClass("breadcrumbs")
-                .attr("aria-label", "breadcrumbs")
+        Element breadcrumbsList = page.slot(PageTemplate.SLOT_BREADCRUMBS)
                 .appendElement("ul");
 
-        List<PageHolder> list = calculateBreadcrumbsList(current);
-        for (PageHolder p : list) {
+        for (PageHolder p : current.getBreadcrumbs()) {
             if (p.isInputFileExists()) {
                 breadcrumbsList.appendElement("li")
                         .appendElement("a")
@@ -634,16 +1410,17 @@ public class Impl {
             }
         }
 
-        Element content = main.appendElement("div")
-                .addClass("content");
-        Element article = content.appendElement("article")
-                .addClass("doc");
+        Element article = page.slot(PageTemplate.SLOT_ARTICLE);
         article.appendElement("h1")
                 .addClass("page")
                 .text(current.getTitle());
 
+        createContentToc(options, param.getListener(), elementToInsert, 2, 1, 3, page.slot(PageTemplate.SLOT_TOC));
+
+        // The document of the page belongs to this publication (for a page derived from a plan, it is the clone made for this publication: the source document kept by the plan is never modified) and is not used after
+        // this step, so its nodes are moved (not cloned) into the output page:
         for (Element e : elementToInsert.children()) {
-            article.appendChild(e.clone());
+            article.appendChild(e);
         }
 
         Element pagination = article.appendElement("nav")
@@ -665,50 +1442,35 @@ public class Impl {
                     .text(next.getTitle());
         }
 
-        createContentToc(options, elementToInsert, 2, 1, 3, content);
-
-        String footer = options.getFooter();
-        if (footer != null) {
-            body.appendElement("footer")
-                    .addClass("footer")
-                    .appendElement("p")
-                    .text(footer);
-        }
         if (options.isIncludeDefaultJs()) {
-            body.appendElement("script")
+            page.slot(PageTemplate.SLOT_SCRIPTS)
+                    .appendElement("script")
                     .attr("src", createFilePath(relPathToOutputFolder, resourceMapping.get(DEFAULT_JS_NAME)));
         }
+        List<Element> notAppended = new ArrayList<>();
         for (Element element : additionalElements) {
-            Element target = findTagetElement(element, doc);
-            if (target != null) {
-                target.appendChild(element.clone());
-            } else {
+            if (!page.append(element)) {
+                notAppended.add(element);
+            }
+        }
+        if (notAppended.isEmpty()) {
+            return page.toByteArray();
+        }
+        // the target is empty in the shell or is part of the content of the page, the elements are added to the complete document:
+        Document doc = page.toDocument();
+        for (Element element : notAppended) {
+            Optional<Element> target = PageTemplate.findTargetElement(element, doc);
+            if (!target.isPresent()) {
                 String parentChain = element.parents()
                         .stream()
                         .map(Element::tagName)
                         .collect(Collectors.joining("->"));
                 throw new IllegalStateException("Can not add element '" + element + "' with parents: '" + parentChain + "' into the target document");
             }
+            target.get()
+                    .appendChild(element);
         }
-        return doc;
-    }
-
-    private static Element findTagetElement(Element element, Document doc) {
-        Element target = doc;
-        Elements parents = element.parents();
-        for (int i = parents.size() - 1; i >= 0; i--) {
-            Element e = parents.get(i);
-            Optional<Element> find = target.children()
-                    .stream()
-                    .filter(c -> Objects.equals(e.tagName(), c.tagName()))
-                    .findFirst();
-            if (find.isPresent()) {
-                target = find.get();
-            } else {
-                return null;
-            }
-        }
-        return target;
+        return PageTemplate.serialize(doc);
     }
 
     private static void appendNavList(int level, List<PageHolder> pages, PageHolder current, Element parent) {
@@ -748,34 +1510,17 @@ public class Impl {
         }
     }
 
-    private static String calculateState(PageHolder page, PageHolder current) {
-        if (Objects.equals(page, current)) {
+    static String calculateState(PageHolder page, PageHolder current) {
+        if (page == current) {
             return "is-current-page";
         }
-        PageHolder parent = current.getParent();
-        while (parent != null) {
-            if (Objects.equals(page, parent)) {
-                return "is-current-path";
-            }
-            parent = parent.getParent();
+        if (current.hasAncestor(page)) {
+            return "is-current-path";
         }
         return null;
     }
 
-    private static List<PageHolder> calculateBreadcrumbsList(PageHolder current) {
-        List<PageHolder> list = new ArrayList<>();
-        PageHolder p = current;
-        while (p.getParent() != null) {
-            list.add(0, p);
-            p = p.getParent();
-        }
-        if (!p.isUniqueRoot()) {
-            list.add(0, p);
-        }
-        return list;
-    }
-
-    static void createContentToc(ConfigurationOptions options, Element elementToInsert, int hLevel, int dataLevel, int dataLevelEnd, Element content) {
+    static void createContentToc(ConfigurationOptions options, PublishListener listener, Element elementToInsert, int hLevel, int dataLevel, int dataLevelEnd, Element content) {
         Element div = content.appendElement("aside")
                 .addClass("toc")
                 .addClass("sidebar")
@@ -800,7 +1545,7 @@ public class Impl {
                     if (id.isPresent()) {
                         anchor = "#" + id.get();
                     } else {
-                        System.err.println("id is not found for node " + element.nodeName() + " '" + element.text() + "'");
+                        listener.warning("id is not found for node " + element.nodeName() + " '" + element.text() + "'");
                         anchor = "#";
                     }
 
@@ -841,18 +1586,23 @@ public class Impl {
         return Optional.empty();
     }
 
-    private static Map<String, String> copyResources(Parameters param) {
+    static Map<String, String> copyResources(Parameters param) {
         ConfigurationOptions options = param.getOptions();
 
+        boolean optimize = options.isOptimizeThemeResources();
         Map<String, String> resourceMapping = new HashMap<>();
         if (options.isIncludeDefaultJs()) {
-            copyResource(param, options.getJavascriptOutputFolder(), DEFAULT_JS_NAME, resourceMapping);
+            copyResource(param, options.getJavascriptOutputFolder(), DEFAULT_JS_NAME, resourceMapping, optimize ? ResourceMinifier::minifyJs : null);
         }
         if (options.isIncludeDefaultCss()) {
             for (String image : SITE_IMAGES) {
                 copyResource(param, options.getImagesOutputFolder(), image, resourceMapping);
             }
-            for (String font : SITE_FONTS) {
+            // all the browsers supporting the default theme support woff2:
+            List<String> fonts = optimize ? SITE_FONTS.stream()
+                    .filter(f -> f.endsWith(".woff2"))
+                    .collect(Collectors.toList()) : SITE_FONTS;
+            for (String font : fonts) {
                 copyResource(param, options.getFontOutputFolder(), font, resourceMapping);
             }
             String relativeFileName = createRelativeFilePath(options.getResourcesRewriteStrategy(), options.getCssOutputFolder(), DEFAULT_CSS_NAME, "dummyHash");
@@ -861,21 +1611,26 @@ public class Impl {
             String relativePathToRoot = relativizeToString(file.getParent(), root) + "/";
 
             UnaryOperator<String> modifier;
-            if (Objects.equals("../", relativePathToRoot) && "images/".equals(options.getImagesOutputFolder()) && "font/".equals(options.getFontOutputFolder()) && options.getResourcesRewriteStrategy() == RewriteStrategy.NO_MODIFICATION) {
+            if (!optimize && Objects.equals("../", relativePathToRoot) && "images/".equals(options.getImagesOutputFolder()) && "font/".equals(options.getFontOutputFolder())
+                    && options.getResourcesRewriteStrategy() == RewriteStrategy.NO_MODIFICATION) {
                 modifier = null;
             } else {
                 modifier = (content) -> {
                     String result = content;
+                    if (optimize) {
+                        result = WOFF_FONT_SOURCE_PATTERN.matcher(result)
+                                .replaceAll("");
+                    }
                     for (String image : SITE_IMAGES) {
                         result = result.replace("images/" + image + ")", resourceMapping.get(image) + ")");
                     }
-                    for (String font : SITE_FONTS) {
+                    for (String font : fonts) {
                         result = result.replace("font/" + font + ")", resourceMapping.get(font) + ")");
                     }
                     if (!Objects.equals("../", relativePathToRoot)) {
                         result = result.replace("url(../", "url(" + relativePathToRoot);
                     }
-                    return result;
+                    return optimize ? ResourceMinifier.minifyCss(result) : result;
                 };
             }
             copyResource(param, options.getCssOutputFolder(), DEFAULT_CSS_NAME, resourceMapping, modifier);
@@ -890,12 +1645,23 @@ public class Impl {
     private static void copyResource(Parameters param, String outputFolder, String resourceName, Map<String, String> mapping, UnaryOperator<String> modifier) {
         RewriteStrategy strategy = param.getOptions()
                 .getResourcesRewriteStrategy();
-
-        byte[] inBytes;
-        try (InputStream inputStream = Impl.class.getResourceAsStream("/" + resourceName)) {
-            inBytes = readBytes(inputStream);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not read resource " + resourceName, e);
+        PublishEvent event = PublishEvent.assetCopy(resourceName, strategy.name());
+
+        Map<String, byte[]> resources = param.getCache()
+                .getResources();
+        byte[] inBytes = resources.get(resourceName);
+        if (inBytes == null) {
+            try (InputStream inputStream = Impl.class.getResourceAsStream("/" + resourceName)) {
+                inBytes = readBytes(inputStream);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read resource " + resourceName, e);
+            }
+            param.getReport()
+                    .addBytesRead(inBytes.length);
+            resources.put(resourceName, inBytes);
+        } else {
+            param.getReport()
+                    .cacheHit();
         }
 
         byte[] outBytes;
@@ -912,18 +1678,38 @@ public class Impl {
         mapping.put(resourceName, relativeFileName);
         Path toFile = param.getOutputRootFolder()
                 .resolve(relativeFileName);
+        param.fileProduced(toFile);
 
         try {
-            if (!Files.exists(toFile)) {
-                Files.createDirectories(toFile.getParent());
-                Files.write(toFile, outBytes);
+            OutputSink sink = param.getSink();
+            // a file name without hash does not change with the content:
+            boolean upToDate = sink.exists(toFile) && (fileHash != null || !isOutdated(param, toFile, outBytes));
+            if (!upToDate && !keepUnchanged(param, toFile, outBytes)) {
+                sink.write(toFile, outBytes);
+                param.getReport()
+                        .fileCopied(outBytes.length);
+                event.commit(toFile, outBytes.length);
+                param.getListener()
+                        .assetCopied(resourceName, toFile);
+            } else {
+                param.getReport()
+                        .fileSkipped();
+                event.commit(toFile, 0L);
+            }
+            if (GzipSidecars.isCompressed(param.getOptions(), toFile, outBytes.length)) {
+                Path sidecar = GzipSidecars.sidecar(toFile);
+                if (upToDate && sink.exists(sidecar)) {
+                    param.fileProduced(sidecar);
+                } else {
+                    GzipSidecars.submit(param, toFile, outBytes);
+                }
             }
         } catch (IOException e) {
             throw new IllegalStateException("Could not write file:'" + toFile + "' for resource '" + resourceName + "'", e);
         }
     }
 
-    private static List<Element> moveAndCopy(Document doc, Path inputFile, Parameters param, String relPathToOutputFolder, String subPath, String tagName, Function<Element, Boolean> filter, String attributeName) throws IOException {
+    static List<Element> moveAndCopy(Document doc, Path inputFile, Parameters param, String relPathToOutputFolder, String subPath, String tagName, Function<Element, Boolean> filter, String attributeName) throws IOException {
         List<Element> result = new ArrayList<>();
 
         Path outputRootFolder = param.getOutputRootFolder();
@@ -940,27 +1726,66 @@ public class Impl {
                             .resolve(attr);
                     //if no file exists at this location, consider that the attribute contains an absolute path to the image:
                     if (!Files.exists(fromFile) || !Files.isRegularFile(fromFile)) {
-                        fromFile = Paths.get(attr);
+                        fromFile = inputFile.getFileSystem()
+                                .getPath(attr);
                     }
                     Path fromFileName = fromFile.getFileName();
                     String relativeFileName;
-                    if (Files.isRegularFile(fromFile)) {
-                        byte[] bytes;
-                        try (InputStream is = Files.newInputStream(fromFile)) {
-                            bytes = readBytes(is);
-                        } catch (IOException e) {
-                            throw new RuntimeException("Could not read file " + fromFile, e);
-                        }
-                        String fileHash = createFileHash(strategy, bytes);
+                    boolean exists = Files.isRegularFile(fromFile);
+                    Map<Path, Set<Path>> pagesByAsset = param.getPagesByAsset();
+                    if (pagesByAsset != null) {
+                        Path asset = exists ? fromFile : inputFile.getParent()
+                                .resolve(attr);
+                        pagesByAsset.computeIfAbsent(asset.toAbsolutePath()
+                                .normalize(), k -> ConcurrentHashMap.newKeySet())
+                                .add(inputFile.toAbsolutePath()
+                                        .normalize());
+                    }
+                    if (exists) {
+                        PublishEvent event = PublishEvent.assetCopy(fromFile.toString(), strategy.name());
+                        BasicFileAttributes attributes = Files.readAttributes(fromFile, BasicFileAttributes.class);
+                        long size = attributes.size();
+                        String fileHash = createFileHash(param, strategy, fromFile, attributes);
                         relativeFileName = createRelativeFilePath(strategy, subPath, fromFileName.toString(), fileHash);
                         Path toFile = outputRootFolder.resolve(relativeFileName);
-                        if (!Files.exists(toFile)) {
-                            Files.createDirectories(toFile.getParent());
-                            Files.copy(fromFile, toFile);
+                        param.fileProduced(toFile);
+                        OutputSink sink = param.getSink();
+                        boolean copy = !sink.exists(toFile) || param.isForcedCopy(fromFile) || (fileHash == null && isOutdated(param, toFile, fromFile, size));
+                        boolean compressed = GzipSidecars.isCompressed(param.getOptions(), toFile, size);
+                        // the compressed copy is computed from the bytes that are written:
+                        byte[] content = null;
+                        if (copy && !keepUnchanged(param, toFile, fromFile, size)) {
+                            if (compressed) {
+                                content = Files.readAllBytes(fromFile);
+                                sink.write(toFile, content);
+                            } else {
+                                sink.copy(fromFile, toFile);
+                            }
+                            param.getReport()
+                                    .fileCopied(size);
+                            event.commit(toFile, size);
+                            param.getListener()
+                                    .assetCopied(fromFile.toString(), toFile);
+                        } else {
+                            param.getReport()
+                                    .fileSkipped();
+                            event.commit(toFile, 0L);
+                        }
+                        if (compressed) {
+                            Path sidecar = GzipSidecars.sidecar(toFile);
+                            if (content == null && (copy || !sink.exists(sidecar))) {
+                                content = Files.readAllBytes(fromFile);
+                            }
+                            if (content != null) {
+                                GzipSidecars.submit(param, toFile, content);
+                            } else {
+                                param.fileProduced(sidecar);
+                            }
                         }
                     } else {
                         relativeFileName = createRelativeFilePath(strategy, subPath, fromFileName.toString(), null);
-                        System.err.println("File '" + fromFile + "' is missing");
+                        param.getListener()
+                                .warning("File '" + fromFile + "' is missing");
                     }
                     String newAttr = createFilePath(relPathToOutputFolder, relativeFileName);
                     element.attr(attributeName, newAttr);
@@ -971,6 +1796,35 @@ public class Impl {
         return result;
     }
 
+    /**
+     * Compute the hash of a file. The file is only read when its hash is not in the cache (the cache key contains the size, the last modified time and the file key of the file).
+     */
+    private static String createFileHash(Parameters param, RewriteStrategy strategy, Path file, BasicFileAttributes attributes) {
+        if (strategy == RewriteStrategy.NO_MODIFICATION) {
+            return null;
+        }
+        PublisherCache cache = param.getCache();
+        Path key = file.toAbsolutePath()
+                .normalize();
+        String hash = cache.getFileHash(key, attributes, strategy);
+        if (hash != null) {
+            param.getReport()
+                    .cacheHit();
+            return hash;
+        }
+        byte[] bytes;
+        try (InputStream is = Files.newInputStream(file)) {
+            bytes = readBytes(is);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read file " + file, e);
+        }
+        param.getReport()
+                .addBytesRead(bytes.length);
+        hash = createFileHash(strategy, bytes);
+        cache.putFileHash(key, attributes, strategy, hash);
+        return hash;
+    }
+
     static String createFileHash(RewriteStrategy strategy, byte[] bytes) {
         if (bytes == null) {
             return null;
@@ -989,7 +1843,7 @@ public class Impl {
         }
     }
 
-    private static String toSHA1(byte[] bytes) {
+    static String toSHA1(byte[] bytes) {
         MessageDigest md;
         try {
             md = MessageDigest.getInstance("SHA-1");
@@ -1063,7 +1917,11 @@ public class Impl {
         return buffer.toByteArray();
     }
 
-    static void rewriteLinks(Document doc, Path inputFolder, Path inputFile, Path outputFolder, Path outputFile, List<PageHolder> pageHolders, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy) {
+    /**
+     * @param linkTargets
+     *            when not null, the input files targeted by the links are added to this set.
+     */
+    static void rewriteLinks(Document doc, Path inputFolder, Path inputFile, Path outputFolder, Path outputFile, Map<Path, Path> outputFilesByInputFile, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy, Set<Path> linkTargets) {
         Elements elements = doc.getElementsByTag("a");
         for (Element element : elements) {
             String attr = element.attr("href");
@@ -1083,24 +1941,19 @@ public class Impl {
                     Path inputFolderAbsolute = inputFolder.normalize()
                             .toAbsolutePath();
 
+                    if (linkTargets != null) {
+                        linkTargets.add(inputTargetFile);
+                    }
+
                     //corresponding file:
-                    Path outputTargetFile = pageHolders.stream()
-                            .flatMap(PageHolder::flattened)
-                            .filter(h -> {
-                                Path absolutePath = h.getInputFile()
-                                        .normalize()
-                                        .toAbsolutePath();
-                                return Objects.equals(absolutePath, inputTargetFile);
-                            })
-                            .findAny()
-                            .map(PageHolder::getOutputFile)
-                            .orElseGet(() -> {
-                                //relative path to the input Folder:
-                                Path inputRelPath = inputFolderAbsolute.relativize(inputTargetFile);
-
-                                //corresponding location in the output folder:
-                                return outputFolder.resolve(inputRelPath);
-                            });
+                    Path outputTargetFile = outputFilesByInputFile.get(inputTargetFile);
+                    if (outputTargetFile == null) {
+                        //relative path to the input Folder:
+                        Path inputRelPath = inputFolderAbsolute.relativize(inputTargetFile);
+
+                        //corresponding location in the output folder:
+                        outputTargetFile = resolve(outputFolder, inputRelPath);
+                    }
 
                     //relative path to the outFile is the new value for href:
                     String newAttr = createLinkHrefValue(outputFile, outputTargetFile, href.getAnchor(), linkToIndexHtmlStrategy);
@@ -1110,6 +1963,20 @@ public class Impl {
         }
     }
 
+    /**
+     * @return the output file of each page, indexed by the normalized absolute path of its input file.
+     */
+    static Map<Path, Path> createOutputFilesByInputFile(List<PageHolder> pageHolders) {
+        Map<Path, Path> result = new HashMap<>();
+        pageHolders.stream()
+                .flatMap(PageHolder::flattened)
+                .filter(h -> h.getInputFile() != null && h.getOutputFile() != null)
+                .forEach(h -> result.putIfAbsent(h.getInputFile()
+                        .normalize()
+                        .toAbsolutePath(), h.getOutputFile()));
+        return result;
+    }
+
     static String createLinkHrefValue(Path outputFile, Path outputTargetFile, String anchor, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy) {
         String hrefValue = relativizeToStringWithTrailingSlash(outputFile.getParent(), outputTargetFile);
         if (linkToIndexHtmlStrategy == LinkToIndexHtmlStrategy.TO_PARENT_FOLDER) {
@@ -1135,23 +2002,225 @@ public class Impl {
         return hrefValue;
     }
 
+    /**
+     * Scan the content of a page (without parsing it) for references that would be rewritten by {@link #moveAndCopy} or {@link #rewriteLinks}: relative src of img and script elements, relative href of stylesheet link elements and relative href of a elements pointing to an other file.
+     * The scan is conservative: when in doubt (unterminated tag, value containing a character reference, ...) the reference is considered as rewritable.
+     */
+    static boolean hasRewritableReference(String content) {
+        Matcher tag = REFERENCE_TAG_PATTERN.matcher(content);
+        while (tag.find()) {
+            if (tag.group(3) == null) {
+                return true;
+            }
+            String tagName = tag.group(1)
+                    .toLowerCase(Locale.ROOT);
+            Matcher attribute = REFERENCE_ATTRIBUTE_PATTERN.matcher(tag.group(2));
+            boolean stylesheet = false;
+            boolean relativeHref = false;
+            while (attribute.find()) {
+                String name = attribute.group(1)
+                        .toLowerCase(Locale.ROOT);
+                String value = attribute.group(2) != null ? attribute.group(2) : attribute.group(3) != null ? attribute.group(3) : attribute.group(4);
+                if (value.indexOf('&') > -1) {
+                    return true;
+                }
+                switch (tagName) {
+                case "img":
+                case "image":
+                case "script":
+                    if ("src".equals(name) && !value.isEmpty() && !isUrlAbsolute(value)) {
+                        return true;
+                    }
+                    break;
+                case "link":
+                    if ("rel".equals(name) && "stylesheet".equalsIgnoreCase(value)) {
+                        stylesheet = true;
+                    } else if ("href".equals(name) && !value.isEmpty() && !isUrlAbsolute(value)) {
+                        relativeHref = true;
+                    }
+                    break;
+                case "a":
+                default:
+                    if ("href".equals(name) && !value.isEmpty() && !isUrlAbsolute(value) && !toHrefHolder(value).getPath()
+                            .isEmpty()) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+            if (stylesheet && relativeHref) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     static boolean isUrlAbsolute(String url) {
         return url.matches("(?:^[a-z][a-z0-9+.-]*:|\\/\\/).+");
     }
 
     static String readFile(Path file) {
-        String content;
+        return new String(readFileBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a folder and its missing parents. Unlike {@link Files#createDirectories(Path, java.nio.file.attribute.FileAttribute...)}, an existing symbolic link to a folder is accepted: the output folder of a staged
+     * publication is a link to its release folder.
+     */
+    static void createFolders(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            Files.createDirectories(folder);
+        }
+    }
+
+    static byte[] readFileBytes(Path file) {
         try {
-            content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            return Files.readAllBytes(file);
         } catch (IOException e) {
             throw new IllegalStateException("Could not read file: " + file, e);
         }
-        return content;
+    }
+
+    /**
+     * Keep an output file when the <code>skipUnchangedOutputFiles</code> option is set or when the publication is staged, and the file already has the given content (the sizes are compared first). When the publication is
+     * staged, the file of the previous output is hard linked into the staging folder.
+     *
+     * @return true when the file is kept, false when it must be written.
+     */
+    static boolean keepUnchanged(Parameters param, Path file, byte[] content) {
+        if (!isSkipUnchanged(param) || !Files.isRegularFile(file)) {
+            return false;
+        }
+        try {
+            if (Files.size(file) != content.length) {
+                return false;
+            }
+            param.getReport()
+                    .addBytesRead(content.length);
+            return Arrays.equals(Files.readAllBytes(file), content) && linkToStagingFolder(param, file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Keep an output file when the <code>skipUnchangedOutputFiles</code> option is set or when the publication is staged, and the file already has the content of the source file (see {@link #keepUnchanged(Parameters, Path, byte[])}).
+     */
+    static boolean keepUnchanged(Parameters param, Path file, Path source, long sourceSize) {
+        if (!isSkipUnchanged(param) || !Files.isRegularFile(file)) {
+            return false;
+        }
+        try {
+            if (Files.size(file) != sourceSize) {
+                return false;
+            }
+            param.getReport()
+                    .addBytesRead(2 * sourceSize);
+            return sameContent(file, source) && linkToStagingFolder(param, file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * In sync mode the output folder is not cleared: an existing output file is outdated when it does not have the given content (the sizes are compared first).
+     */
+    static boolean isOutdated(Parameters param, Path file, byte[] content) {
+        if (!isSyncing(param)) {
+            return false;
+        }
+        try {
+            if (Files.size(file) != content.length) {
+                return true;
+            }
+            param.getReport()
+                    .addBytesRead(content.length);
+            return !Arrays.equals(Files.readAllBytes(file), content);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * In sync mode, an existing output file is outdated when it does not have the content of the source file (see {@link #isOutdated(Parameters, Path, byte[])}).
+     */
+    static boolean isOutdated(Parameters param, Path file, Path source, long sourceSize) {
+        if (!isSyncing(param)) {
+            return false;
+        }
+        try {
+            if (Files.size(file) != sourceSize) {
+                return true;
+            }
+            param.getReport()
+                    .addBytesRead(2 * sourceSize);
+            return !sameContent(file, source);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static boolean isSyncing(Parameters param) {
+        ConfigurationOptions options = param.getOptions();
+        return options.isSyncOutputRootFolder() && !options.isStagedPublishing() && param.getSink() instanceof FileSystemSink;
+    }
+
+    private static boolean isSkipUnchanged(Parameters param) {
+        // only the files of the output folder can be compared, in a staged publication the unchanged files are always linked from the previous output:
+        return (param.getOptions()
+                .isSkipUnchangedOutputFiles() || param.getStagingFolder() != null) && param.getSink() instanceof FileSystemSink;
+    }
+
+    private static boolean linkToStagingFolder(Parameters param, Path file) {
+        Path stagingFile = param.toStagingFile(file);
+        if (stagingFile.equals(file)) {
+            return true;
+        }
+        try {
+            createFolders(stagingFile.getParent());
+            Files.createLink(stagingFile, file);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // hard links are not supported, the file is written
+            return false;
+        }
+    }
+
+    private static boolean sameContent(Path file1, Path file2) throws IOException {
+        try (InputStream in1 = Files.newInputStream(file1); InputStream in2 = Files.newInputStream(file2)) {
+            byte[] buffer1 = new byte[8192];
+            byte[] buffer2 = new byte[8192];
+            int read;
+            while ((read = readFully(in1, buffer1)) > 0) {
+                if (readFully(in2, buffer2) != read) {
+                    return false;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer1[i] != buffer2[i]) {
+                        return false;
+                    }
+                }
+            }
+            return readFully(in2, buffer2) == 0;
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+        return total;
     }
 
     static void writeFile(Path file, String content) {
+        writeFile(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void writeFile(Path file, byte[] content) {
         try {
-            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+            Files.write(file, content);
         } catch (IOException e) {
             throw new IllegalStateException("Could not write file: " + file, e);
         }
@@ -1191,6 +2260,8 @@ public class Impl {
     }
 
     static void writeCatalog(Parameters param, ConfigurationCatalog catalog) {
+        PublishEvent event = PublishEvent.catalogWrite(catalog.getStrategy()
+                .name());
         List<Path> files;
         switch (catalog.getStrategy()) {
         case PUBLISH_OUTPUT:
@@ -1202,8 +2273,10 @@ public class Impl {
                     .collect(Collectors.toList());
             break;
         case SCAN_FOLDER:
-            try (Stream<Path> walk = Files.walk(catalog.getFolder())) {
-                files = walk
+            try {
+                files = param.getSink()
+                        .listFiles(catalog.getFolder())
+                        .stream()
                         .filter(path -> isHtmlFile(path))
                         .collect(Collectors.toList());
             } catch (IOException e) {
@@ -1254,9 +2327,22 @@ public class Impl {
 
         String content = String.join("\n", catalogOut);
         try {
-            Files.createDirectories(catalog.getOutputFile()
-                    .getParent());
-            Files.write(catalog.getOutputFile(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            param.fileProduced(catalog.getOutputFile());
+            if (GzipSidecars.isCompressed(param.getOptions(), catalog.getOutputFile(), bytes.length)) {
+                GzipSidecars.submit(param, catalog.getOutputFile(), bytes);
+            }
+            if (keepUnchanged(param, catalog.getOutputFile(), bytes)) {
+                param.getReport()
+                        .fileSkipped();
+                event.commit(catalog.getOutputFile(), 0L);
+            } else {
+                param.getSink()
+                        .write(catalog.getOutputFile(), bytes);
+                param.getReport()
+                        .addBytesWritten(bytes.length);
+                event.commit(catalog.getOutputFile(), bytes.length);
+            }
         } catch (IOException e) {
             throw new IllegalStateException("Can not write file: " + catalog.getOutputFile(), e);
         }
@@ -1265,6 +2351,20 @@ public class Impl {
         }
     }
 
+    /**
+     * Resolve a relative path against a folder. The path can belong to another file system than the folder (for example an input folder in a zip archive and an output folder on the disk).
+     */
+    static Path resolve(Path folder, Path relativePath) {
+        if (Objects.equals(folder.getFileSystem(), relativePath.getFileSystem())) {
+            return folder.resolve(relativePath);
+        }
+        Path result = folder;
+        for (Path name : relativePath) {
+            result = result.resolve(name.toString());
+        }
+        return result;
+    }
+
     static String relativizeToString(Path rootFolder, Path p) {
         return rootFolder.relativize(p)
                 .toString()
@@ -1283,10 +2383,8 @@ public class Impl {
     }
 
     private static boolean isHtmlFile(Path path) {
-        return path.toFile()
-                .isFile()
-                && endsWithHtml(path.toFile()
-                        .getName());
+        return Files.isRegularFile(path) && endsWithHtml(path.getFileName()
+                .toString());
     }
 
     private static boolean endsWithHtml(String name) {
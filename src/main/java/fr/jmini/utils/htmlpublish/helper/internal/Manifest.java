@@ -0,0 +1,265 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import fr.jmini.utils.htmlpublish.helper.ConfigurationOptions;
+
+/**
+ * Description of a publication, written next to the output folder (it is not part of the published site) to allow a partial republication: fingerprint of the options, fingerprint of the context of each page (output
+ * file, output files of the link targets, page tree and titles displayed in the navigation of a complete site...), the output file of each page, the resource files used by each page and the files targeted by the links of
+ * each page.
+ * <p>
+ * A page is published again when its input file or one of its resource files has changed, or when its fingerprint is different. The output files of the pages that are no longer published are deleted.
+ */
+class Manifest {
+
+    static final String FILE_SUFFIX = ".html-publish-manifest";
+
+    private static final String OPTIONS = "options";
+    private static final String PAGE = "page";
+    private static final String ASSET = "asset";
+    private static final String LINK = "link";
+    private static final String OUTPUT = "output";
+
+    private final String optionsFingerprint;
+    private final Map<Path, String> pageFingerprints;
+    private final Map<Path, Set<Path>> pagesByAsset;
+    private final Map<Path, Set<Path>> linksByPage;
+    private final Map<Path, Path> outputFiles;
+    private String siteFingerprint;
+
+    Manifest(String optionsFingerprint, Map<Path, String> pageFingerprints, Map<Path, Set<Path>> pagesByAsset, Map<Path, Set<Path>> linksByPage, Map<Path, Path> outputFiles) {
+        this.optionsFingerprint = optionsFingerprint;
+        this.pageFingerprints = pageFingerprints;
+        this.pagesByAsset = pagesByAsset;
+        this.linksByPage = linksByPage;
+        this.outputFiles = outputFiles;
+    }
+
+    String getOptionsFingerprint() {
+        return optionsFingerprint;
+    }
+
+    /**
+     * @return fingerprint by input file (absolute and normalized path) of the published pages.
+     */
+    Map<Path, String> getPageFingerprints() {
+        return pageFingerprints;
+    }
+
+    /**
+     * @return input files of the pages (absolute and normalized paths) by resource file.
+     */
+    Map<Path, Set<Path>> getPagesByAsset() {
+        return pagesByAsset;
+    }
+
+    /**
+     * @return input files targeted by the links (absolute and normalized paths) by page.
+     */
+    Map<Path, Set<Path>> getLinksByPage() {
+        return linksByPage;
+    }
+
+    /**
+     * @return output file (absolute and normalized path) by input file of the published pages.
+     */
+    Map<Path, Path> getOutputFiles() {
+        return outputFiles;
+    }
+
+    /**
+     * @return the output files of the previous publication that are not output files of this publication: the output files of the removed pages and the previous output files of the moved pages.
+     */
+    Set<Path> removedOutputFiles(Manifest previous) {
+        Set<Path> result = new HashSet<>(previous.getOutputFiles()
+                .values());
+        result.removeAll(outputFiles.values());
+        return result;
+    }
+
+    /**
+     * @return the default location of the manifest: a file next to the output folder, so that it is not published with the site.
+     */
+    static Path file(Path outputRootFolder) {
+        return outputRootFolder.resolveSibling(outputRootFolder.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Compute the manifest of a publication, before the publication. The resource files and the links are recorded in the returned maps during the publication, the fingerprints of the pages are computed afterwards (see
+     * {@link #computePageFingerprints(Parameters)}).
+     */
+    static Manifest compute(Parameters param) {
+        Manifest manifest = new Manifest(optionsFingerprint(param.getOptions()), new HashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new HashMap<>());
+        manifest.siteFingerprint = siteFingerprint(param);
+        return manifest;
+    }
+
+    /**
+     * @return for a complete site, a fingerprint of the navigation displayed in each page: the complete tree (it covers the previous and next pages and the breadcrumbs), the site name and the home link. Empty otherwise.
+     */
+    private static String siteFingerprint(Parameters param) {
+        if (!param.getOptions()
+                .isCompleteSite()) {
+            return "";
+        }
+        StringBuilder context = new StringBuilder();
+        for (PageHolder page : param.getAllPageHolders()) {
+            context.append(page.getDepth())
+                    .append('|')
+                    .append(page.getTitle())
+                    .append('|')
+                    .append(page.getOutputFile())
+                    .append('|')
+                    .append(page.isInputFileExists())
+                    .append('\n');
+        }
+        context.append(param.getSiteName())
+                .append('\n');
+        if (param.getSiteHomeLink() != null) {
+            context.append(param.getSiteHomeLink()
+                    .getHrefValue(param.getOutputRootFolder()))
+                    .append('\n');
+        }
+        return Impl.toSHA1(context.toString()
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param links
+     *            the input files targeted by the links of the page.
+     * @return the fingerprint of the context of a page: its output file, the output files of its link targets and, for a complete site, the navigation. Adding, removing or renaming a page only changes the fingerprint of
+     *         the pages linking to it (and of all the pages of a complete site, because of the navigation).
+     */
+    String fingerprint(Parameters param, PageHolder page, Set<Path> links) {
+        StringBuilder context = new StringBuilder();
+        context.append(page.getOutputFile())
+                .append('\n');
+        // links between pages are rewritten with the output files:
+        Map<Path, Path> outputFilesByInputFile = param.getOutputFilesByInputFile();
+        links.stream()
+                .sorted()
+                .forEach(link -> context.append(link)
+                        .append('>')
+                        .append(outputFilesByInputFile.get(link))
+                        .append('\n'));
+        context.append(siteFingerprint);
+        return Impl.toSHA1(context.toString()
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compute the fingerprints and record the output files of the published pages, once the links of the pages are recorded.
+     */
+    void computePageFingerprints(Parameters param) {
+        for (PageHolder page : param.getAllPageHolders()) {
+            if (page.isInputFileExists()) {
+                Path inputFile = normalize(page.getInputFile());
+                pageFingerprints.put(inputFile, fingerprint(param, page, linksByPage.getOrDefault(inputFile, Collections.emptySet())));
+                outputFiles.put(inputFile, normalize(page.getOutputFile()));
+            }
+        }
+    }
+
+    /**
+     * @return a fingerprint of the options that have an impact on the published pages. The fields added to {@link ConfigurationOptions} (see {@link Impl#copyOptions(ConfigurationOptions)}) must be added here.
+     */
+    static String optionsFingerprint(ConfigurationOptions options) {
+        String value = String.join("\n", String.valueOf(options.getPagesBaseFolder()), String.valueOf(options.getLinkToIndexHtmlStrategy()), String.valueOf(options.getImagesOutputFolder()),
+                String.valueOf(options.getJavascriptOutputFolder()), String.valueOf(options.getCssOutputFolder()), String.valueOf(options.getFontOutputFolder()), String.valueOf(options.getResourcesRewriteStrategy()),
+                String.valueOf(options.isCompleteSite()), String.valueOf(options.isIncludeDefaultCss()), String.valueOf(options.isIncludeOriginalCss()), String.valueOf(options.isIncludeDefaultJs()),
+                String.valueOf(options.isIncludeOriginalJs()), String.valueOf(options.isCreateToc()), String.valueOf(options.getSiteName()), String.valueOf(options.getSiteHomePath()), String.valueOf(options.getFooter()),
+                String.valueOf(options.isGzipOutputFiles()), String.valueOf(options.getGzipLevel()), String.valueOf(options.getGzipMinimumSize()), String.valueOf(options.isCompactOutput()),
+                String.valueOf(options.isOptimizeThemeResources()));
+        return Impl.toSHA1(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param fileSystem
+     *            the file system of the input files, used to read the paths of the pages and of the resources.
+     * @param outputFileSystem
+     *            the file system of the output folder, used to read the paths of the output files.
+     */
+    static Optional<Manifest> read(Path file, FileSystem fileSystem, FileSystem outputFileSystem) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read file: " + file, e);
+        }
+        String optionsFingerprint = null;
+        Map<Path, String> pageFingerprints = new HashMap<>();
+        Map<Path, Set<Path>> pagesByAsset = new ConcurrentHashMap<>();
+        Map<Path, Set<Path>> linksByPage = new ConcurrentHashMap<>();
+        Map<Path, Path> outputFiles = new HashMap<>();
+        for (String line : lines) {
+            String[] parts = line.split("\t");
+            if (OPTIONS.equals(parts[0]) && parts.length == 2) {
+                optionsFingerprint = parts[1];
+            } else if (PAGE.equals(parts[0]) && parts.length == 3) {
+                pageFingerprints.put(fileSystem.getPath(parts[1]), parts[2]);
+            } else if (ASSET.equals(parts[0]) && parts.length == 3) {
+                pagesByAsset.computeIfAbsent(fileSystem.getPath(parts[1]), k -> ConcurrentHashMap.newKeySet())
+                        .add(fileSystem.getPath(parts[2]));
+            } else if (LINK.equals(parts[0]) && parts.length == 3) {
+                linksByPage.computeIfAbsent(fileSystem.getPath(parts[1]), k -> ConcurrentHashMap.newKeySet())
+                        .add(fileSystem.getPath(parts[2]));
+            } else if (OUTPUT.equals(parts[0]) && parts.length == 3) {
+                outputFiles.put(fileSystem.getPath(parts[1]), outputFileSystem.getPath(parts[2]));
+            }
+        }
+        if (optionsFingerprint == null) {
+            // not a manifest written by this version
+            return Optional.empty();
+        }
+        return Optional.of(new Manifest(optionsFingerprint, pageFingerprints, pagesByAsset, linksByPage, outputFiles));
+    }
+
+    void write(Path file) {
+        List<String> lines = new ArrayList<>();
+        lines.add(OPTIONS + "\t" + optionsFingerprint);
+        new TreeMap<>(pageFingerprints).forEach((page, fingerprint) -> lines.add(PAGE + "\t" + page + "\t" + fingerprint));
+        new TreeMap<>(pagesByAsset).forEach((asset, pages) -> pages.stream()
+                .sorted()
+                .forEach(page -> lines.add(ASSET + "\t" + asset + "\t" + page)));
+        new TreeMap<>(linksByPage).forEach((page, links) -> links.stream()
+                .sorted()
+                .forEach(link -> lines.add(LINK + "\t" + page + "\t" + link)));
+        new TreeMap<>(outputFiles).forEach((page, outputFile) -> lines.add(OUTPUT + "\t" + page + "\t" + outputFile));
+        try {
+            Impl.createFolders(file.getParent());
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write file: " + file, e);
+        }
+    }
+
+    static Path normalize(Path path) {
+        return path.toAbsolutePath()
+                .normalize();
+    }
+
+    static Set<Path> normalize(Set<Path> paths) {
+        return paths.stream()
+                .map(Manifest::normalize)
+                .collect(Collectors.toSet());
+    }
+}
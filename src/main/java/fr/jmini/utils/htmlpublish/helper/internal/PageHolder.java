@@ -1,35 +1,52 @@
 package fr.jmini.utils.htmlpublish.helper.internal;
 
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
 
+import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
-import fr.jmini.utils.htmlpublish.helper.ConfigurationPageOptions;
 import fr.jmini.utils.htmlpublish.helper.LinkToIndexHtmlStrategy;
+import fr.jmini.utils.htmlpublish.helper.PublishReport.Phase;
 
 class PageHolder implements Link {
     private PageMapping pageMapping;
     private Document document;
+    private SoftReference<Document> sourceDocument;
 
     private PageHolder parent;
+    private PageHolder[] ancestorPath;
     private boolean uniqueRoot;
     private List<PageHolder> children;
     private PageHolder previous;
     private PageHolder next;
-    private String title;
+    private volatile String title;
     private LinkToIndexHtmlStrategy linkToIndexHtmlStrategy;
+    private ReportCollector report;
+    private PageHolder source;
 
-    public PageHolder(PageMapping pageMapping, PageHolder parent, boolean uniqueRoot, Document document, String title, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy) {
+    public PageHolder(PageMapping pageMapping, PageHolder parent, boolean uniqueRoot, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy, ReportCollector report) {
+        this(pageMapping, parent, uniqueRoot, linkToIndexHtmlStrategy, report, null);
+    }
+
+    /**
+     * @param source
+     *            page of a publication plan this page is derived from. The documents and the titles are taken from the source, which caches an unmodified version of its document.
+     */
+    public PageHolder(PageMapping pageMapping, PageHolder parent, boolean uniqueRoot, LinkToIndexHtmlStrategy linkToIndexHtmlStrategy, ReportCollector report, PageHolder source) {
         this.pageMapping = pageMapping;
         this.parent = parent;
+        this.ancestorPath = createAncestorPath(parent, this);
         this.uniqueRoot = uniqueRoot;
         this.children = new ArrayList<>();
-        this.document = document;
-        this.title = title;
         this.linkToIndexHtmlStrategy = linkToIndexHtmlStrategy;
+        this.report = report;
+        this.source = source;
     }
 
     public Path getInputFile() {
@@ -44,18 +61,137 @@ class PageHolder implements Link {
         return pageMapping.getOutputFile();
     }
 
-    public ConfigurationPageOptions getPageOptions() {
+    public PageOptions getPageOptions() {
         return pageMapping.getPageOptions();
     }
 
-    public Document getDocument() {
+    /**
+     * @return the document of the input file. It is parsed the first time it is requested (or cloned from the document of the source page).
+     */
+    public synchronized Document getDocument() {
+        if (document == null) {
+            if (source != null) {
+                document = source.getSourceDocument(report)
+                        .clone();
+            } else {
+                document = readDocument(report);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * @return the document of this page used as source of other pages. It is never modified. It is only softly referenced: the documents of a plan are reused by the next publications as long as the memory allows it,
+     *         otherwise they are parsed again.
+     */
+    private synchronized Document getSourceDocument(ReportCollector reportCollector) {
+        Document result = getCachedSourceDocument();
+        if (result == null) {
+            result = readDocument(reportCollector);
+            sourceDocument = new SoftReference<>(result);
+        } else {
+            reportCollector.cacheHit();
+        }
+        return result;
+    }
+
+    private Document getCachedSourceDocument() {
+        return sourceDocument != null ? sourceDocument.get() : null;
+    }
+
+    private Document readDocument(ReportCollector reportCollector) {
+        byte[] content = Impl.readFileBytes(getInputFile());
+        reportCollector.addBytesRead(content.length);
+        return parse(new String(content, StandardCharsets.UTF_8), content.length, reportCollector);
+    }
+
+    /**
+     * @param inputFileContent
+     *            content of the input file, used if the document was not parsed yet
+     * @param inputFileSize
+     *            size in bytes of the input file
+     * @return the document of the input file.
+     */
+    public synchronized Document getDocument(String inputFileContent, long inputFileSize) {
+        if (source != null) {
+            return getDocument();
+        }
+        if (document == null) {
+            document = parse(inputFileContent, inputFileSize, report);
+        }
         return document;
     }
 
+    private Document parse(String content, long size, ReportCollector reportCollector) {
+        PublishEvent event = PublishEvent.pageParse(getInputFile());
+        reportCollector.startPhase();
+        try {
+            return Jsoup.parse(content);
+        } finally {
+            reportCollector.endPhase(Phase.PARSING);
+            event.commit(getOutputFile(), size);
+        }
+    }
+
+    /**
+     * Reuse the document of the page of a previous plan, when the input file has not changed (if it was not collected yet). The document is shared, it must not be modified.
+     */
+    public synchronized void adoptDocument(PageHolder previous) {
+        if (sourceDocument == null && source == null) {
+            synchronized (previous) {
+                sourceDocument = previous.sourceDocument;
+            }
+        }
+    }
+
+    /**
+     * Drop the parsed document once the page is published, so that the documents of large sites are not all kept in memory. It is parsed again if it is requested later.
+     */
+    public synchronized void releaseDocument() {
+        document = null;
+    }
+
+    /**
+     * @return true when the parsed document is kept by this page (the softly referenced document of a plan page is not considered).
+     */
+    synchronized boolean isDocumentLoaded() {
+        return document != null;
+    }
+
+    public PageMapping getPageMapping() {
+        return pageMapping;
+    }
+
     public PageHolder getParent() {
         return parent;
     }
 
+    /**
+     * @return the depth of the page in the tree (0 for root pages).
+     */
+    public int getDepth() {
+        return ancestorPath.length - 1;
+    }
+
+    /**
+     * @param page
+     *            a page of the tree
+     * @return true if the page is one of the parents of this page (the page itself is not considered as an ancestor). The check is done in constant time.
+     */
+    public boolean hasAncestor(PageHolder page) {
+        int depth = page.getDepth();
+        return depth < getDepth() && ancestorPath[depth] == page;
+    }
+
+    /**
+     * @return the pages displayed in the breadcrumbs: the path from the root to this page, without the root if it is the unique root of the tree.
+     */
+    public List<PageHolder> getBreadcrumbs() {
+        int start = ancestorPath[0].isUniqueRoot() ? 1 : 0;
+        return Arrays.asList(ancestorPath)
+                .subList(start, ancestorPath.length);
+    }
+
     public boolean isUniqueRoot() {
         return uniqueRoot;
     }
@@ -87,7 +223,11 @@ class PageHolder implements Link {
     public String getTitle() {
         if (pageMapping.getTitle() != null) {
             return pageMapping.getTitle();
-        } else if (title != null) {
+        } else if (isInputFileExists()) {
+            // read when it is requested for the first time, only the title is kept:
+            if (title == null) {
+                title = source != null ? source.getTitle() : readTitle();
+            }
             return title;
         }
         return pageMapping.getInputFile()
@@ -95,8 +235,20 @@ class PageHolder implements Link {
                 .toString();
     }
 
+    /**
+     * When the page is being rendered, its document is already parsed (in complete site mode the title is read before the content of the document is moved to the output page). Otherwise, for example when the title is
+     * displayed in the navigation of an other page, the document is parsed for the title and dropped, so that the documents of all the pages are not kept in memory.
+     */
+    private synchronized String readTitle() {
+        Document doc = document != null ? document : getCachedSourceDocument();
+        if (doc == null) {
+            doc = readDocument(report);
+        }
+        return Impl.readTitleFromDoc(doc, getPageOptions(), getInputFile());
+    }
+
     public boolean isTitleSet() {
-        return pageMapping.getTitle() != null || title != null;
+        return pageMapping.getTitle() != null || isInputFileExists();
     }
 
     @Override
@@ -104,6 +256,15 @@ class PageHolder implements Link {
         return Impl.createLinkHrefValue(fromCurrentOutputPath, getOutputFile(), null, linkToIndexHtmlStrategy);
     }
 
+    private static PageHolder[] createAncestorPath(PageHolder parent, PageHolder page) {
+        if (parent == null) {
+            return new PageHolder[] { page };
+        }
+        PageHolder[] result = Arrays.copyOf(parent.ancestorPath, parent.ancestorPath.length + 1);
+        result[parent.ancestorPath.length] = page;
+        return result;
+    }
+
     public Stream<PageHolder> flattened() {
         return Stream.concat(
                 Stream.of(this),
@@ -3,17 +3,15 @@ package fr.jmini.utils.htmlpublish.helper.internal;
 import java.nio.file.Path;
 import java.util.List;
 
-import fr.jmini.utils.htmlpublish.helper.ConfigurationPageOptions;
-
 class PageMapping {
     private Path inputFile;
     private boolean inputFileExists;
     private Path outputFile;
-    private ConfigurationPageOptions pageOptions;
+    private PageOptions pageOptions;
     private String title;
     private List<PageMapping> children;
 
-    public PageMapping(Path inputFile, boolean inputFileExists, Path outputFile, ConfigurationPageOptions pageOptions, String title, List<PageMapping> children) {
+    public PageMapping(Path inputFile, boolean inputFileExists, Path outputFile, PageOptions pageOptions, String title, List<PageMapping> children) {
         this.inputFile = inputFile;
         this.inputFileExists = inputFileExists;
         this.outputFile = outputFile;
@@ -34,7 +32,7 @@ class PageMapping {
         return outputFile;
     }
 
-    public ConfigurationPageOptions getPageOptions() {
+    public PageOptions getPageOptions() {
         return pageOptions;
     }
 
@@ -0,0 +1,55 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Evaluator;
+
+import fr.jmini.utils.htmlpublish.helper.IndexHandling;
+
+/**
+ * Page options after the merge of the {@link fr.jmini.utils.htmlpublish.helper.ConfigurationPage} values with the default page options. The selectors are compiled once and reused for each document.
+ */
+class PageOptions {
+    private final IndexHandling indexHandling;
+    private final String titleSelector;
+    private final Evaluator titleEvaluator;
+    private final String sitePageSelector;
+    private final Evaluator sitePageEvaluator;
+
+    public PageOptions(IndexHandling indexHandling, String titleSelector, Evaluator titleEvaluator, String sitePageSelector, Evaluator sitePageEvaluator) {
+        this.indexHandling = indexHandling;
+        this.titleSelector = titleSelector;
+        this.titleEvaluator = titleEvaluator;
+        this.sitePageSelector = sitePageSelector;
+        this.sitePageEvaluator = sitePageEvaluator;
+    }
+
+    public IndexHandling getIndexHandling() {
+        return indexHandling;
+    }
+
+    public String getTitleSelector() {
+        return titleSelector;
+    }
+
+    public String getSitePageSelector() {
+        return sitePageSelector;
+    }
+
+    /**
+     * @return the first element matching the title selector (the <code>title</code> html tag if not set), or null.
+     */
+    public Element selectTitle(Element root) {
+        return Collector.findFirst(titleEvaluator, root);
+    }
+
+    /**
+     * @return the first element matching the site page selector, or null if there is no match or if the selector is not set.
+     */
+    public Element selectSitePage(Element root) {
+        if (sitePageEvaluator == null) {
+            return null;
+        }
+        return Collector.findFirst(sitePageEvaluator, root);
+    }
+}
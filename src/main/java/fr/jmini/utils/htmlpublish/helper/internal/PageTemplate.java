@@ -0,0 +1,486 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.DocumentType;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+
+import fr.jmini.utils.htmlpublish.helper.ConfigurationOptions;
+
+/**
+ * Shell of the pages published as complete site. The static parts (head, header, navbar, toolbar, footer, ...) are serialized once and stored as encoded fragments. The parts that depend on the page are slots, filled for each page.
+ * <p>
+ * The slots are serialized with the indentation of their position in the page, which relies on the way the jsoup pretty printer writes the indentation. This is verified when the template is compiled: if the fragments do
+ * not produce the same output as the complete document, the pages are serialized as complete documents (see {@link Page#toDocument()}).
+ */
+class PageTemplate {
+
+    static final String SLOT_HEAD = "head";
+    static final String SLOT_BRAND = "brand";
+    static final String SLOT_NAV = "nav";
+    static final String SLOT_HOME_LINK = "home-link";
+    static final String SLOT_BREADCRUMBS = "breadcrumbs";
+    static final String SLOT_ARTICLE = "article";
+    static final String SLOT_TOC = "toc";
+    static final String SLOT_SCRIPTS = "scripts";
+
+    private static final String MARKER_PREFIX = "html-publish-helper-slot-";
+
+    private final Document skeleton;
+    /**
+     * Shell containing the slot markers, used to build the complete document of a page.
+     */
+    private final Document markedSkeleton;
+    private final Document.OutputSettings outputSettings;
+    private final List<SlotPosition> slotPositions;
+    private final byte[][] fragments;
+    private final Map<String, Integer> namedSlots;
+    private final Map<Element, Integer> appendSlots;
+    /**
+     * First child element of each element of the shell, by tag name. The shell is never walked after the compilation: the lazy caches of jsoup nodes are not thread-safe and the template is shared by the publications.
+     */
+    private final Map<Element, Map<String, Element>> childrenByTag;
+    private boolean fragmentsVerified;
+
+    private PageTemplate(Document skeleton, Document markedSkeleton, List<SlotPosition> slotPositions, byte[][] fragments, Map<String, Integer> namedSlots, Map<Element, Integer> appendSlots,
+            Map<Element, Map<String, Element>> childrenByTag) {
+        this.skeleton = skeleton;
+        this.markedSkeleton = markedSkeleton;
+        this.outputSettings = skeleton.outputSettings();
+        this.slotPositions = slotPositions;
+        this.fragments = fragments;
+        this.namedSlots = namedSlots;
+        this.appendSlots = appendSlots;
+        this.childrenByTag = childrenByTag;
+    }
+
+    static PageTemplate compile(ConfigurationOptions options) {
+        Document doc = new Document("");
+        doc.outputSettings()
+                .charset("ASCII")
+                .prettyPrint(!options.isCompactOutput());
+        doc.appendChild(new DocumentType("html", "", ""));
+        Element html = doc.appendElement("html");
+        html.attr("lang", "en");
+        Element head = html.appendElement("head");
+        head.appendElement("meta")
+                .attr("name", "viewport")
+                .attr("content", "width=device-width,initial-scale=1");
+        addSlotMarker(head, SLOT_HEAD);
+        Element body = html.appendElement("body")
+                .addClass("article");
+        Element brand = body.appendElement("header")
+                .addClass("header")
+                .appendElement("nav")
+                .addClass("navbar")
+                .appendElement("div")
+                .addClass("navbar-brand");
+        addSlotMarker(brand, SLOT_BRAND);
+        Element bodyDiv = body.appendElement("div")
+                .addClass("body");
+        Element nav = bodyDiv.appendElement("div")
+                .addClass("nav-container")
+                .appendElement("aside")
+                .addClass("nav");
+        Element navMenu = nav.appendElement("div")
+                .addClass("panels")
+                .appendElement("div")
+                .addClass("nav-panel-menu")
+                .addClass("is-active")
+                .attr("data-panel", "menu")
+                .appendElement("nav")
+                .addClass("nav-menu");
+        navMenu.appendElement("h3")
+                .addClass("title")
+                .appendElement("a")
+                .attr("href", "#");
+        addSlotMarker(navMenu, SLOT_NAV);
+
+        nav.appendElement("div")
+                .addClass("nav-panel-explore")
+                .attr("data-panel", "explore")
+                .appendElement("div")
+                .addClass("context");
+
+        Element main = bodyDiv.appendElement("main")
+                .addClass("article");
+        Element toolbar = main.appendElement("div")
+                .addClass("toolbar")
+                .attr("role", "navigation");
+        toolbar.appendElement("button")
+                .addClass("nav-toggle");
+        addSlotMarker(toolbar, SLOT_HOME_LINK);
+        Element breadcrumbs = toolbar.appendElement("nav")
+                .addClass("breadcrumbs")
+                .attr("aria-label", "breadcrumbs");
+        addSlotMarker(breadcrumbs, SLOT_BREADCRUMBS);
+
+        Element content = main.appendElement("div")
+                .addClass("content");
+        Element article = content.appendElement("article")
+                .addClass("doc");
+        addSlotMarker(article, SLOT_ARTICLE);
+        addSlotMarker(content, SLOT_TOC);
+
+        String footer = options.getFooter();
+        if (footer != null) {
+            body.appendElement("footer")
+                    .addClass("footer")
+                    .appendElement("p")
+                    .text(footer);
+        }
+        addSlotMarker(body, SLOT_SCRIPTS);
+
+        // Elements of the original document (css and js) are appended at the end of the corresponding element of the shell:
+        List<Element> appendTargets = new ArrayList<>();
+        for (Element e : doc.getAllElements()) {
+            if (e != doc && e.childNodeSize() > 0) {
+                appendTargets.add(e);
+            }
+        }
+        Map<Element, Comment> appendMarkers = new IdentityHashMap<>();
+        for (int i = 0; i < appendTargets.size(); i++) {
+            Element target = appendTargets.get(i);
+            appendMarkers.put(target, addSlotMarker(target, "append-" + i));
+        }
+
+        String serialized = doc.outerHtml();
+        List<SlotPosition> slotPositions = new ArrayList<>();
+        List<byte[]> fragments = new ArrayList<>();
+        Map<String, Integer> namedSlots = new HashMap<>();
+        Map<Element, Integer> appendSlots = new IdentityHashMap<>();
+        int start = 0;
+        for (Comment marker : findMarkers(doc)) {
+            String markerHtml = "<!--" + marker.getData() + "-->";
+            int index = serialized.indexOf(markerHtml, start);
+            if (index < 0) {
+                throw new IllegalStateException("Could not find the slot '" + marker.getData() + "' in the page template");
+            }
+            // the pretty printer indents the comments, the indentation in front of the slot content is produced when the slot is rendered:
+            String fragment = serialized.substring(start, index)
+                    .replaceFirst("\n *$", "");
+            fragments.add(fragment.getBytes(StandardCharsets.UTF_8));
+            start = index + markerHtml.length();
+
+            Element parent = (Element) marker.parentNode();
+            SlotPosition position = new SlotPosition(parent.tagName(), parent.parents()
+                    .size() + 1, marker.siblingIndex() > 0);
+            String name = marker.getData()
+                    .substring(MARKER_PREFIX.length());
+            Integer slotIndex = slotPositions.size();
+            if (appendMarkers.get(parent) == marker) {
+                appendSlots.put(parent, slotIndex);
+            } else {
+                namedSlots.put(name, slotIndex);
+            }
+            slotPositions.add(position);
+        }
+        fragments.add(serialized.substring(start)
+                .getBytes(StandardCharsets.UTF_8));
+
+        Document markedSkeleton = doc.clone();
+        for (Comment marker : findMarkers(doc)) {
+            marker.remove();
+        }
+
+        Map<Element, Map<String, Element>> childrenByTag = new IdentityHashMap<>();
+        for (Element e : doc.getAllElements()) {
+            Map<String, Element> children = new HashMap<>();
+            for (Element child : e.children()) {
+                children.putIfAbsent(child.tagName(), child);
+            }
+            childrenByTag.put(e, children);
+        }
+        PageTemplate template = new PageTemplate(doc, markedSkeleton, slotPositions, fragments.toArray(new byte[fragments.size()][]), namedSlots, appendSlots, childrenByTag);
+        template.fragmentsVerified = template.verifyFragments();
+        return template;
+    }
+
+    /**
+     * @return true when a page filled with sample content is serialized by the fragments exactly as its complete document.
+     */
+    private boolean verifyFragments() {
+        Page fragmentsPage = newPage();
+        Page documentPage = newPage();
+        fillSample(fragmentsPage);
+        fillSample(documentPage);
+        return Arrays.equals(fragmentsPage.fragmentsToByteArray(), serialize(documentPage.toDocument()));
+    }
+
+    private void fillSample(Page page) {
+        for (int i = 0; i < slotPositions.size(); i++) {
+            Element div = page.slot(i)
+                    .appendElement("div")
+                    .addClass("sample");
+            div.appendElement("ul")
+                    .appendElement("li")
+                    .appendElement("a")
+                    .attr("href", "#")
+                    .text("Sample");
+            div.appendElement("p")
+                    .appendText("Some ")
+                    .appendElement("em")
+                    .text("text");
+            div.appendElement("pre")
+                    .text("line 1\n  line 2");
+        }
+    }
+
+    /**
+     * @return true when the pages are serialized with the fragments, false when they are serialized as complete documents.
+     */
+    boolean isFragmentsVerified() {
+        return fragmentsVerified;
+    }
+
+    static byte[] serialize(Document doc) {
+        return doc.outerHtml()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Comment addSlotMarker(Element parent, String name) {
+        Comment marker = new Comment(MARKER_PREFIX + name);
+        parent.appendChild(marker);
+        return marker;
+    }
+
+    private static List<Comment> findMarkers(Node root) {
+        List<Comment> result = new ArrayList<>();
+        collectMarkers(root, result);
+        return result;
+    }
+
+    private static void collectMarkers(Node node, List<Comment> result) {
+        for (Node child : node.childNodes()) {
+            if (child instanceof Comment && ((Comment) child).getData()
+                    .startsWith(MARKER_PREFIX)) {
+                result.add((Comment) child);
+            } else {
+                collectMarkers(child, result);
+            }
+        }
+    }
+
+    /**
+     * @return a new page, where the slots can be filled.
+     */
+    Page newPage() {
+        return new Page();
+    }
+
+    /**
+     * Find the element of the shell corresponding to an element of the original document, by following its parent chain.
+     */
+    Optional<Element> findTargetElement(Element element) {
+        Element target = skeleton;
+        Elements parents = element.parents();
+        for (int i = parents.size() - 1; i >= 0; i--) {
+            target = childrenByTag.get(target)
+                    .get(parents.get(i)
+                            .tagName());
+            if (target == null) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(target);
+    }
+
+    /**
+     * Find the element of a complete document corresponding to an element of the original document, by following its parent chain. The document must not be shared: its children are walked.
+     */
+    static Optional<Element> findTargetElement(Element element, Document doc) {
+        Element target = doc;
+        Elements parents = element.parents();
+        for (int i = parents.size() - 1; i >= 0; i--) {
+            String tagName = parents.get(i)
+                    .tagName();
+            target = target.children()
+                    .stream()
+                    .filter(c -> tagName.equals(c.tagName()))
+                    .findFirst()
+                    .orElse(null);
+            if (target == null) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(target);
+    }
+
+    class Page {
+        private final Document scratch;
+        private final Element[] slots = new Element[slotPositions.size()];
+
+        private Page() {
+            scratch = new Document("");
+            scratch.outputSettings(outputSettings.clone());
+        }
+
+        /**
+         * @param name
+         *            name of the slot (one of the SLOT_* constants)
+         * @return the element where the content of the slot can be appended.
+         */
+        Element slot(String name) {
+            Integer index = namedSlots.get(name);
+            if (index == null) {
+                throw new IllegalArgumentException("Unknown slot: " + name);
+            }
+            return slot(index);
+        }
+
+        private Element slot(int index) {
+            if (slots[index] == null) {
+                SlotPosition position = slotPositions.get(index);
+                Element parent = scratch.appendElement(position.parentTag);
+                if (position.precededBySibling) {
+                    // the empty text node is not rendered, but the slot content is serialized as if it was following an other node:
+                    parent.appendChild(new TextNode(""));
+                }
+                slots[index] = parent;
+            }
+            return slots[index];
+        }
+
+        /**
+         * Append an element of the original document at the end of the corresponding element of the shell.
+         *
+         * @return true if the element was added, false if the shell does not contain any corresponding element.
+         */
+        boolean append(Element element) {
+            Optional<Element> target = findTargetElement(element);
+            if (!target.isPresent()) {
+                return false;
+            }
+            Integer index = appendSlots.get(target.get());
+            if (index == null) {
+                return false;
+            }
+            slot(index).appendChild(element);
+            return true;
+        }
+
+        /**
+         * @return the complete document of the page: the shell with the content of the slots. The content is moved from the slots, the page can not be used afterwards.
+         */
+        Document toDocument() {
+            Document doc = markedSkeleton.clone();
+            List<Comment> markers = findMarkers(doc);
+            for (int i = 0; i < markers.size(); i++) {
+                Comment marker = markers.get(i);
+                if (slots[i] != null) {
+                    List<Node> children = new ArrayList<>(slots[i].childNodes());
+                    // the empty text node added in front of the content is not part of the content:
+                    int start = slotPositions.get(i).precededBySibling ? 1 : 0;
+                    for (Node child : children.subList(start, children.size())) {
+                        marker.before(child);
+                    }
+                }
+                marker.remove();
+            }
+            return doc;
+        }
+
+        byte[] toByteArray() {
+            if (!fragmentsVerified) {
+                return serialize(toDocument());
+            }
+            return fragmentsToByteArray();
+        }
+
+        private byte[] fragmentsToByteArray() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < slots.length; i++) {
+                out.write(fragments[i], 0, fragments[i].length);
+                if (slots[i] != null) {
+                    sb.setLength(0);
+                    SlotPosition position = slotPositions.get(i);
+                    if (outputSettings.prettyPrint()) {
+                        slots[i].html(new ShiftedIndentAppendable(sb, position.depth * outputSettings.indentAmount()));
+                    } else {
+                        slots[i].html(sb);
+                    }
+                    byte[] bytes = sb.toString()
+                            .getBytes(StandardCharsets.UTF_8);
+                    out.write(bytes, 0, bytes.length);
+                }
+            }
+            out.write(fragments[slots.length], 0, fragments[slots.length].length);
+            return out.toByteArray();
+        }
+    }
+
+    private static class SlotPosition {
+        private final String parentTag;
+        private final int depth;
+        private final boolean precededBySibling;
+
+        SlotPosition(String parentTag, int depth, boolean precededBySibling) {
+            this.parentTag = parentTag;
+            this.depth = depth;
+            this.precededBySibling = precededBySibling;
+        }
+    }
+
+    /**
+     * Appendable used to serialize nodes as if they were located at a given depth of the page: the indentation produced by the jsoup pretty printer (a new line followed by a padding made of spaces) is shifted.
+     */
+    private static class ShiftedIndentAppendable implements Appendable {
+        private final StringBuilder sb;
+        private final String shift;
+        private boolean afterNewLine = false;
+
+        ShiftedIndentAppendable(StringBuilder sb, int shift) {
+            this.sb = sb;
+            StringBuilder padding = new StringBuilder();
+            for (int i = 0; i < shift; i++) {
+                padding.append(' ');
+            }
+            this.shift = padding.toString();
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            if (afterNewLine && isPadding(csq)) {
+                sb.append(shift);
+            }
+            afterNewLine = false;
+            sb.append(csq);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            return append(csq.subSequence(start, end));
+        }
+
+        @Override
+        public Appendable append(char c) {
+            afterNewLine = (c == '\n');
+            sb.append(c);
+            return this;
+        }
+
+        private static boolean isPadding(CharSequence csq) {
+            for (int i = 0; i < csq.length(); i++) {
+                if (csq.charAt(i) != ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -2,23 +2,79 @@ package fr.jmini.utils.htmlpublish.helper.internal;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 
+import org.jsoup.select.Evaluator;
+
 import fr.jmini.utils.htmlpublish.helper.ConfigurationCatalog;
 import fr.jmini.utils.htmlpublish.helper.ConfigurationOptions;
-import fr.jmini.utils.htmlpublish.helper.ConfigurationPageOptions;
+import fr.jmini.utils.htmlpublish.helper.OutputSink;
+import fr.jmini.utils.htmlpublish.helper.PublishListener;
 
 class Parameters {
 
     private Path inputRootFolder;
     private Path outputRootFolder;
-    private ConfigurationPageOptions defaultPageOptions;
+    private PageOptions defaultPageOptions;
     private List<PageHolder> pageHolders = new ArrayList<>();
     private List<ConfigurationCatalog> catalogs = new ArrayList<>();
     private ConfigurationOptions options = new ConfigurationOptions();
     private Link siteHomeLink;
     private String siteName;
+    private PageTemplate pageTemplate;
+    private final PublisherCache cache;
+    private Map<Path, Path> outputFilesByInputFile;
+    private Map<String, String> resourceMapping;
+    private Map<Path, Set<Path>> pagesByAsset;
+    private Map<Path, Set<Path>> linksByPage;
+    private Set<Path> forcedCopies = Collections.emptySet();
+    private final Set<Path> producedFiles = ConcurrentHashMap.newKeySet();
+    private Path stagingFolder;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private OutputSink outputSink;
+    private boolean outputArchive;
+    private OutputSink sink;
+    private ReportCollector report = new ReportCollector();
+    private PublishListener listener = Impl.DEFAULT_LISTENER;
+    private Parameters shared;
+
+    public Parameters() {
+        this(new PublisherCache());
+    }
+
+    public Parameters(PublisherCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return parameters sharing the configuration, the page tree, the template and the site resources of these parameters, with their own report, produced files, pending tasks and sink. Used for a single request on
+     *         parameters that are reused (rendering of single pages), so that the state of a request is dropped with it.
+     */
+    Parameters forRequest() {
+        Parameters result = new Parameters(cache);
+        result.inputRootFolder = inputRootFolder;
+        result.outputRootFolder = outputRootFolder;
+        result.defaultPageOptions = defaultPageOptions;
+        result.pageHolders = pageHolders;
+        result.catalogs = catalogs;
+        result.options = options;
+        result.siteHomeLink = siteHomeLink;
+        result.siteName = siteName;
+        result.pageTemplate = pageTemplate;
+        result.outputFilesByInputFile = getOutputFilesByInputFile();
+        result.outputSink = outputSink;
+        result.outputArchive = outputArchive;
+        result.listener = listener;
+        result.shared = this;
+        return result;
+    }
 
     public Path getInputRootFolder() {
         return inputRootFolder;
@@ -36,11 +92,11 @@ class Parameters {
         this.outputRootFolder = outputRootFolder;
     }
 
-    public ConfigurationPageOptions getDefaultPageOptions() {
+    public PageOptions getDefaultPageOptions() {
         return defaultPageOptions;
     }
 
-    public void setDefaultPageOptions(ConfigurationPageOptions defaultPageOptions) {
+    public void setDefaultPageOptions(PageOptions defaultPageOptions) {
         this.defaultPageOptions = defaultPageOptions;
     }
 
@@ -56,6 +112,14 @@ class Parameters {
 
     public void setPageHolders(List<PageHolder> pageHolders) {
         this.pageHolders = pageHolders;
+        this.outputFilesByInputFile = null;
+    }
+
+    public synchronized Map<Path, Path> getOutputFilesByInputFile() {
+        if (outputFilesByInputFile == null) {
+            outputFilesByInputFile = Impl.createOutputFilesByInputFile(pageHolders);
+        }
+        return outputFilesByInputFile;
     }
 
     public List<ConfigurationCatalog> getCatalogs() {
@@ -97,4 +161,166 @@ class Parameters {
     public void setSiteName(String siteName) {
         this.siteName = siteName;
     }
+
+    public PageTemplate getPageTemplate() {
+        return pageTemplate;
+    }
+
+    public void setPageTemplate(PageTemplate pageTemplate) {
+        this.pageTemplate = pageTemplate;
+    }
+
+    public Map<String, Evaluator> getCompiledSelectors() {
+        return cache.getCompiledSelectors();
+    }
+
+    public PublisherCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the mapping between the site resources and their path relative to the output folder. The resources are copied the first time this method is called.
+     */
+    public synchronized Map<String, String> getResourceMapping() {
+        if (shared != null) {
+            // the site resources are copied once, by the first request needing them:
+            synchronized (shared) {
+                if (shared.resourceMapping == null) {
+                    shared.resourceMapping = Impl.copyResources(this);
+                }
+                return shared.resourceMapping;
+            }
+        }
+        if (resourceMapping == null) {
+            resourceMapping = Impl.copyResources(this);
+        }
+        return resourceMapping;
+    }
+
+    public ReportCollector getReport() {
+        return report;
+    }
+
+    /**
+     * @return when not null, the copied (or missing) resource files are recorded in this map, with the input files of the pages using them. All paths are absolute and normalized.
+     */
+    public Map<Path, Set<Path>> getPagesByAsset() {
+        return pagesByAsset;
+    }
+
+    public void setPagesByAsset(Map<Path, Set<Path>> pagesByAsset) {
+        this.pagesByAsset = pagesByAsset;
+    }
+
+    /**
+     * @return when not null, the input files targeted by the links of each rendered page are recorded in this map (pages and link targets as absolute and normalized paths).
+     */
+    public Map<Path, Set<Path>> getLinksByPage() {
+        return linksByPage;
+    }
+
+    public void setLinksByPage(Map<Path, Set<Path>> linksByPage) {
+        this.linksByPage = linksByPage;
+    }
+
+    /**
+     * @param forcedCopies
+     *            resource files (absolute and normalized paths) that are copied even if the target file already exists in the output folder.
+     */
+    public void setForcedCopies(Set<Path> forcedCopies) {
+        this.forcedCopies = forcedCopies;
+    }
+
+    public boolean isForcedCopy(Path file) {
+        return !forcedCopies.isEmpty() && forcedCopies.contains(file.toAbsolutePath()
+                .normalize());
+    }
+
+    /**
+     * Register the completion of a task running in the background. The completions are run in their registration order at the end of the publishing.
+     */
+    void addPendingTask(Runnable completion) {
+        pendingTasks.add(completion);
+    }
+
+    Runnable pollPendingTask() {
+        return pendingTasks.poll();
+    }
+
+    /**
+     * @return the sink configured with {@link fr.jmini.utils.htmlpublish.helper.ConfigurationHolder#getOutputSink()}, if any.
+     */
+    public OutputSink getOutputSink() {
+        return outputSink;
+    }
+
+    public void setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
+    /**
+     * @return true when the output is written to a zip archive located at the output root folder (see {@link fr.jmini.utils.htmlpublish.helper.ConfigurationHolder#isOutputArchive()}).
+     */
+    public boolean isOutputArchive() {
+        return outputArchive;
+    }
+
+    public void setOutputArchive(boolean outputArchive) {
+        this.outputArchive = outputArchive;
+    }
+
+    /**
+     * @return the destination of the written files: the configured sink or by default the output folder on the file system.
+     */
+    synchronized OutputSink getSink() {
+        if (sink == null) {
+            sink = outputSink != null ? outputSink : new FileSystemSink(this);
+        }
+        return sink;
+    }
+
+    synchronized void setSink(OutputSink sink) {
+        this.sink = sink;
+    }
+
+    public Path getStagingFolder() {
+        return stagingFolder;
+    }
+
+    public void setStagingFolder(Path stagingFolder) {
+        this.stagingFolder = stagingFolder;
+    }
+
+    /**
+     * @return the location where a file of the output folder is written: in the staging folder when the publication is staged, otherwise the file itself.
+     */
+    public Path toStagingFile(Path file) {
+        if (stagingFolder == null || !file.startsWith(outputRootFolder)) {
+            return file;
+        }
+        return stagingFolder.resolve(outputRootFolder.relativize(file));
+    }
+
+    /**
+     * Record a file written (or left untouched because it was already up-to-date) in the output folder by the publication.
+     */
+    public void fileProduced(Path file) {
+        producedFiles.add(file.toAbsolutePath()
+                .normalize());
+    }
+
+    /**
+     * @return the files produced by the publication (absolute and normalized paths).
+     */
+    public Set<Path> getProducedFiles() {
+        return producedFiles;
+    }
+
+    public PublishListener getListener() {
+        return listener;
+    }
+
+    public void setListener(PublishListener listener) {
+        this.listener = listener;
+    }
 }
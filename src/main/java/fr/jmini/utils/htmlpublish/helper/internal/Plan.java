@@ -0,0 +1,105 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import fr.jmini.utils.htmlpublish.helper.PublicationPlan;
+
+/**
+ * Result of the planning of a publication: the resolved configuration and the page tree. The documents parsed during the planning and the publications of the plan are kept, they are never modified.
+ */
+public class Plan {
+
+    private final Parameters parameters;
+    private Parameters renderParameters;
+    private Map<Path, PageHolder> renderPagesByPath;
+
+    Plan(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    Parameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return the parameters used to render single pages, derived from the plan the first time they are requested and then reused.
+     */
+    synchronized Parameters getRenderParameters(PublisherCache cache) {
+        if (renderParameters == null) {
+            renderParameters = Impl.deriveParameters(parameters, null, null, cache);
+            renderPagesByPath = new HashMap<>();
+            for (PageHolder page : renderParameters.getAllPageHolders()) {
+                if (page.isInputFileExists()) {
+                    renderPagesByPath.putIfAbsent(normalize(page.getInputFile()), page);
+                    renderPagesByPath.putIfAbsent(normalize(page.getOutputFile()), page);
+                }
+            }
+        }
+        return renderParameters;
+    }
+
+    /**
+     * Find a page of the render parameters.
+     *
+     * @param path
+     *            input or output file of the page. A relative path is resolved against the input root folder and then against the output root folder. A path to a folder designates its <code>index.html</code> file.
+     */
+    synchronized Optional<PageHolder> findRenderPage(Path path) {
+        if (renderPagesByPath == null) {
+            throw new IllegalStateException("The render parameters are not computed");
+        }
+        for (Path candidate : candidates(path)) {
+            PageHolder page = renderPagesByPath.get(normalize(candidate));
+            if (page != null) {
+                return Optional.of(page);
+            }
+            page = renderPagesByPath.get(normalize(candidate.resolve("index.html")));
+            if (page != null) {
+                return Optional.of(page);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Path[] candidates(Path path) {
+        if (path.isAbsolute()) {
+            return new Path[] { path };
+        }
+        if (getInputRootFolder() == null) {
+            return new Path[] { getOutputRootFolder().resolve(path) };
+        }
+        return new Path[] { getInputRootFolder().resolve(path), getOutputRootFolder().resolve(path) };
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath()
+                .normalize();
+    }
+
+    public Path getInputRootFolder() {
+        return parameters.getInputRootFolder();
+    }
+
+    public Path getOutputRootFolder() {
+        return parameters.getOutputRootFolder();
+    }
+
+    public String getSiteName() {
+        return parameters.getSiteName();
+    }
+
+    public List<PublicationPlan.Page> getPages() {
+        return toPages(parameters.getPageHolders());
+    }
+
+    private static List<PublicationPlan.Page> toPages(List<PageHolder> pageHolders) {
+        return pageHolders.stream()
+                .map(h -> new PublicationPlan.Page(h.getInputFile(), h.getOutputFile(), h.isInputFileExists(), h::getTitle, toPages(h.getChildren())))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,43 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.nio.file.Path;
+
+/**
+ * Java Flight Recorder events emitted during the publication.
+ * <p>
+ * This implementation does nothing: <code>jdk.jfr</code> is not available with Java 8. The jar is a multi-release jar, the implementation located in <code>src/main/java11</code> is used with Java 11 and above.
+ */
+class PublishEvent {
+
+    private static final PublishEvent NO_OP = new PublishEvent();
+
+    private PublishEvent() {
+    }
+
+    static PublishEvent pageParse(Path inputFile) {
+        return NO_OP;
+    }
+
+    static PublishEvent pageRender(Path inputFile, String strategy) {
+        return NO_OP;
+    }
+
+    static PublishEvent assetCopy(String input, String strategy) {
+        return NO_OP;
+    }
+
+    static PublishEvent catalogWrite(String strategy) {
+        return NO_OP;
+    }
+
+    /**
+     * End the event and commit it if it is recorded.
+     *
+     * @param outputFile
+     *            the written file (can be null)
+     * @param bytes
+     *            number of bytes read (parse) or written (render, asset copy, catalog write).
+     */
+    void commit(Path outputFile, long bytes) {
+    }
+}
@@ -0,0 +1,145 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoup.select.Evaluator;
+
+import fr.jmini.utils.htmlpublish.helper.RewriteStrategy;
+
+/**
+ * Caches that can be shared by several publications, possibly running at the same time: compiled selectors, content of the site resources and hashes of the copied files. It also
+ * owns the executor of the background tasks (compression of the output files).
+ * <p>
+ * This class is an opaque handle: it is only public so that the {@link fr.jmini.utils.htmlpublish.helper.Publisher} can own an instance, the caches themselves are only accessible in this package. It is not part of
+ * the API and is never exposed by the classes of the <code>fr.jmini.utils.htmlpublish.helper</code> package.
+ */
+public final class PublisherCache {
+
+    /**
+     * When this number of file hashes is reached, the hashes are dropped so that a long running publisher does not grow without limit.
+     */
+    private static final int MAX_FILE_HASHES = 100_000;
+
+    /**
+     * The resolution of the modification time depends on the file system (up to 2 seconds). The hash of a file modified less than this duration before is not cached: the file could be modified again with the same size
+     * and the same modification time.
+     */
+    private static final long RECENT_MODIFICATION_MILLIS = 2_000;
+
+    private final ConcurrentMap<String, Evaluator> compiledSelectors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, byte[]> resources = new ConcurrentHashMap<>();
+    private final ConcurrentMap<FileKey, String> fileHashes = new ConcurrentHashMap<>();
+    private volatile ExecutorService executor;
+
+    public PublisherCache() {
+        // empty caches, filled by the publications
+    }
+
+    ConcurrentMap<String, Evaluator> getCompiledSelectors() {
+        return compiledSelectors;
+    }
+
+    /**
+     * @return the content of the site resources (read from the classpath) by resource name. The arrays must not be modified.
+     */
+    ConcurrentMap<String, byte[]> getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the executor of the background tasks, created on the first use. Its threads are daemon threads, stopped when they are idle, so the executor does not need to be shut down.
+     */
+    ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    int threads = Runtime.getRuntime()
+                            .availableProcessors();
+                    AtomicInteger count = new AtomicInteger();
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "html-publish-helper-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = result = pool;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param attributes
+     *            the attributes of the file, read before its content. The hash is found when the size, the modification time and the file key (inode) of the file are the ones of the cached hash.
+     */
+    String getFileHash(Path file, BasicFileAttributes attributes, RewriteStrategy strategy) {
+        return fileHashes.get(new FileKey(file, attributes, strategy));
+    }
+
+    void putFileHash(Path file, BasicFileAttributes attributes, RewriteStrategy strategy, String hash) {
+        if (System.currentTimeMillis() - attributes.lastModifiedTime()
+                .toMillis() < RECENT_MODIFICATION_MILLIS) {
+            return;
+        }
+        if (fileHashes.size() >= MAX_FILE_HASHES) {
+            fileHashes.clear();
+        }
+        fileHashes.put(new FileKey(file, attributes, strategy), hash);
+    }
+
+    /**
+     * Drop the hashes of files known to be modified (absolute and normalized paths).
+     */
+    void invalidateFileHashes(Collection<Path> files) {
+        fileHashes.keySet()
+                .removeIf(key -> files.contains(key.file));
+    }
+
+    private static class FileKey {
+        private final Path file;
+        private final long size;
+        private final FileTime lastModified;
+        private final Object fileKey;
+        private final RewriteStrategy strategy;
+
+        FileKey(Path file, BasicFileAttributes attributes, RewriteStrategy strategy) {
+            this.file = file;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime();
+            // null when the file system does not provide it:
+            this.fileKey = attributes.fileKey();
+            this.strategy = strategy;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, size, lastModified, fileKey, strategy);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FileKey)) {
+                return false;
+            }
+            FileKey other = (FileKey) obj;
+            return size == other.size && strategy == other.strategy && Objects.equals(file, other.file) && Objects.equals(lastModified, other.lastModified) && Objects.equals(fileKey, other.fileKey);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.jmini.utils.htmlpublish.helper.PublishReport;
+import fr.jmini.utils.htmlpublish.helper.PublishReport.PageTiming;
+import fr.jmini.utils.htmlpublish.helper.PublishReport.Phase;
+
+/**
+ * Collect the values of the {@link PublishReport} during a publication. The counters can be updated from several threads.
+ * <p>
+ * Phases can be nested (for example a document parsed while an other page is rendered): the time of the inner phase is not counted in the outer phase.
+ */
+class ReportCollector {
+
+    private static final int SLOWEST_PAGES_COUNT = 10;
+
+    private final long start = System.nanoTime();
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final ThreadLocal<Deque<long[]>> runningPhases = ThreadLocal.withInitial(ArrayDeque::new);
+    private final AtomicInteger publishedPages = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong filesCopied = new AtomicLong();
+    private final AtomicLong filesSkipped = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final PriorityQueue<PageTiming> slowestPages = new PriorityQueue<>(Comparator.comparing(PageTiming::getDuration));
+
+    ReportCollector() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     * Start a phase on the current thread. Must be followed by a call to {@link #endPhase(Phase)} (in a finally block).
+     */
+    void startPhase() {
+        runningPhases.get()
+                .push(new long[] { System.nanoTime(), 0L });
+    }
+
+    void endPhase(Phase phase) {
+        Deque<long[]> stack = runningPhases.get();
+        long[] frame = stack.pop();
+        long elapsed = System.nanoTime() - frame[0];
+        phaseNanos.get(phase)
+                .add(elapsed - frame[1]);
+        long[] parent = stack.peek();
+        if (parent != null) {
+            parent[1] += elapsed;
+        }
+    }
+
+    void pagePublished(PageHolder page, long nanos) {
+        publishedPages.incrementAndGet();
+        PageTiming timing = new PageTiming(page.getInputFile(), page.getOutputFile(), Duration.ofNanos(nanos));
+        synchronized (slowestPages) {
+            slowestPages.add(timing);
+            if (slowestPages.size() > SLOWEST_PAGES_COUNT) {
+                slowestPages.poll();
+            }
+        }
+    }
+
+    void addBytesRead(long count) {
+        bytesRead.addAndGet(count);
+    }
+
+    void addBytesWritten(long count) {
+        bytesWritten.addAndGet(count);
+    }
+
+    void fileCopied(long size) {
+        filesCopied.incrementAndGet();
+        bytesWritten.addAndGet(size);
+    }
+
+    void fileSkipped() {
+        filesSkipped.incrementAndGet();
+    }
+
+    void cacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    PublishReport toReport() {
+        Map<Phase, Duration> durations = new EnumMap<>(Phase.class);
+        for (Map.Entry<Phase, LongAdder> e : phaseNanos.entrySet()) {
+            durations.put(e.getKey(), Duration.ofNanos(e.getValue()
+                    .sum()));
+        }
+        List<PageTiming> slowest;
+        synchronized (slowestPages) {
+            slowest = new ArrayList<>(slowestPages);
+        }
+        slowest.sort(Comparator.comparing(PageTiming::getDuration)
+                .reversed());
+        return new PublishReport(Duration.ofNanos(System.nanoTime() - start), durations, publishedPages.get(), bytesRead.get(), bytesWritten.get(), filesCopied.get(), filesSkipped.get(), cacheHits.get(), slowest);
+    }
+}
@@ -0,0 +1,94 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+/**
+ * Minify the resources of the default theme (<code>optimizeThemeResources</code> option). The minification is conservative: it only covers the constructs used by the <code>site.css</code> and <code>site.js</code> files
+ * of this project.
+ */
+class ResourceMinifier {
+
+    /**
+     * Characters before which the whitespace of a stylesheet can be removed (not a colon: <code>a :hover</code> and <code>a:hover</code> are different selectors).
+     */
+    private static final String CSS_SPACE_BEFORE = "{};,)";
+
+    /**
+     * Characters after which the whitespace of a stylesheet can be removed.
+     */
+    private static final String CSS_SPACE_AFTER = "{};:,(";
+
+    private ResourceMinifier() {
+    }
+
+    /**
+     * Remove the comments and the whitespace that is not significant. The strings are kept as they are, the whitespace is only removed next to the block delimiters, declaration separators, commas and parentheses (and after
+     * a colon), so that the descendant combinators and the expressions of <code>@media</code> and <code>calc()</code> are not modified.
+     */
+    static String minifyCss(String css) {
+        StringBuilder sb = new StringBuilder(css.length());
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < css.length()) {
+            char c = css.charAt(i);
+            if (c == '/' && i + 1 < css.length() && css.charAt(i + 1) == '*') {
+                int end = css.indexOf("*/", i + 2);
+                i = end < 0 ? css.length() : end + 2;
+                pendingSpace = true;
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+            } else {
+                if (c == '}' && sb.length() > 0 && sb.charAt(sb.length() - 1) == ';') {
+                    // the last declaration of a block does not need a separator:
+                    sb.setLength(sb.length() - 1);
+                }
+                if (pendingSpace && sb.length() > 0 && CSS_SPACE_BEFORE.indexOf(c) < 0 && CSS_SPACE_AFTER.indexOf(sb.charAt(sb.length() - 1)) < 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                if (c == '"' || c == '\'') {
+                    int end = endOfString(css, i, c);
+                    sb.append(css, i, end);
+                    i = end;
+                } else {
+                    sb.append(c);
+                    i++;
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int endOfString(String css, int start, char quote) {
+        int i = start + 1;
+        while (i < css.length()) {
+            char c = css.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return css.length();
+    }
+
+    /**
+     * Remove the blank lines, the indentation and the line breaks following a statement terminated by a semicolon. The script is otherwise not modified (it is already minified), the other line breaks are kept because
+     * they can terminate a statement.
+     */
+    static String minifyJs(String js) {
+        StringBuilder sb = new StringBuilder(js.length());
+        for (String line : js.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ';') {
+                sb.append('\n');
+            }
+            sb.append(trimmed);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,296 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import fr.jmini.utils.htmlpublish.helper.ConfigurationHolder;
+import fr.jmini.utils.htmlpublish.helper.PublishListener;
+import fr.jmini.utils.htmlpublish.helper.PublishReport;
+
+/**
+ * Publish the pages once and then republish them each time the input files are modified.
+ * <p>
+ * Only the modified pages are rendered again, with the pages referencing a modified resource file. All the pages are rendered again when the page tree changes (page added, deleted or moved, modified <code>pages.yaml</code>
+ * file) or, for a complete site, when a title displayed in the navigation changes.
+ */
+public class Watcher implements Closeable {
+
+    private final ConfigurationHolder configuration;
+    private final PublisherCache cache;
+    private final Duration debounce;
+    private final Map<WatchKey, Path> folders = new ConcurrentHashMap<>();
+    private final Set<Path> recursiveFolders = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Set<Path>> pagesByAsset = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+    private Plan plan;
+    private Path outputRootFolder;
+    private volatile boolean closed;
+
+    public Watcher(ConfigurationHolder configuration, PublisherCache cache, Duration debounce) {
+        this.configuration = configuration;
+        this.cache = cache;
+        this.debounce = debounce;
+    }
+
+    /**
+     * Publish all the pages and start watching the input folders (in a daemon thread).
+     *
+     * @return the report of the initial publication.
+     */
+    public synchronized PublishReport start() {
+        if (watchService != null) {
+            throw new IllegalStateException("The watcher is already started");
+        }
+        PublishReport report = publishAll();
+        try {
+            watchService = Impl.inputFileSystem(plan.getParameters())
+                    .newWatchService();
+            registerFolders();
+        } catch (IOException | UnsupportedOperationException e) {
+            // some file systems (like zip file systems) can not be watched:
+            throw new IllegalStateException("Could not watch the input folders", e);
+        }
+        thread = new Thread(this::watchLoop, "html-publish-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return report;
+    }
+
+    /**
+     * Publish all the pages, without reusing the previous plan.
+     */
+    synchronized PublishReport publishAll() {
+        plan = Impl.plan(configuration, cache);
+        outputRootFolder = normalize(plan.getOutputRootFolder());
+        Parameters param = Impl.deriveParameters(plan.getParameters(), null, null, cache);
+        param.setPagesByAsset(pagesByAsset);
+        param.setForcedCopies(new HashSet<>(pagesByAsset.keySet()));
+        return Impl.publish(param, p -> true, true, true);
+    }
+
+    /**
+     * Republish the pages after some files have been modified.
+     *
+     * @param changedFiles
+     *            the created, modified or deleted files (absolute and normalized paths).
+     * @return the report of the publication.
+     */
+    synchronized PublishReport update(Set<Path> changedFiles) {
+        Parameters planParam = plan.getParameters();
+        if (planParam.isOutputArchive() && planParam.getOutputSink() == null) {
+            // an archive can not be partially updated:
+            return publishAll();
+        }
+        // a file rewritten with the same size and modification time would keep its hash:
+        cache.invalidateFileHashes(changedFiles);
+        Plan previous = plan;
+        plan = Impl.replan(previous, configuration, changedFiles, cache);
+        Parameters previousParam = previous.getParameters();
+        Parameters nextParam = plan.getParameters();
+        boolean shapeChanged = !Impl.pageTreeShape(previousParam)
+                .equals(Impl.pageTreeShape(nextParam));
+        boolean titlesChanged = !titles(previousParam).equals(titles(nextParam)) || !Objects.equals(previousParam.getSiteName(), nextParam.getSiteName());
+
+        Parameters param = Impl.deriveParameters(nextParam, null, null, cache);
+        param.setPagesByAsset(pagesByAsset);
+        param.setForcedCopies(changedFiles);
+        if (shapeChanged || (titlesChanged && param.getOptions()
+                .isCompleteSite())) {
+            // the navigation of all the pages is modified:
+            return Impl.publish(param, p -> true, false, true);
+        }
+        Set<Path> pages = new HashSet<>(changedFiles);
+        for (Path file : changedFiles) {
+            pages.addAll(pagesByAsset.getOrDefault(file, Collections.emptySet()));
+        }
+        return Impl.publish(param, p -> pages.contains(normalize(p.getInputFile())), false, titlesChanged);
+    }
+
+    private static List<String> titles(Parameters param) {
+        return param.getAllPageHolders()
+                .stream()
+                .map(PageHolder::getTitle)
+                .collect(Collectors.toList());
+    }
+
+    private void registerFolders() throws IOException {
+        Path inputRootFolder = plan.getInputRootFolder();
+        if (inputRootFolder != null) {
+            registerAll(inputRootFolder);
+            String pagesBaseFolder = plan.getParameters()
+                    .getOptions()
+                    .getPagesBaseFolder();
+            if (pagesBaseFolder != null) {
+                registerAll(inputRootFolder.resolve(pagesBaseFolder));
+            }
+        }
+        // pages and resources located outside of the input root folder:
+        for (PageHolder page : plan.getParameters()
+                .getAllPageHolders()) {
+            if (page.isInputFileExists()) {
+                register(page.getInputFile()
+                        .getParent());
+            }
+        }
+        for (Path asset : pagesByAsset.keySet()) {
+            register(asset.getParent());
+        }
+    }
+
+    private void registerAll(Path folder) throws IOException {
+        Path normalized = normalize(folder);
+        if (!Files.isDirectory(normalized) || isOutput(normalized)) {
+            return;
+        }
+        recursiveFolders.add(normalized);
+        try (Stream<Path> stream = Files.walk(normalized)) {
+            stream.filter(Files::isDirectory)
+                    .filter(f -> !isOutput(f))
+                    .forEach(f -> {
+                        try {
+                            doRegister(f);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void register(Path folder) throws IOException {
+        Path normalized = normalize(folder);
+        if (!Files.isDirectory(normalized) || isOutput(normalized) || recursiveFolders.stream()
+                .anyMatch(normalized::startsWith)) {
+            return;
+        }
+        doRegister(normalized);
+    }
+
+    private void doRegister(Path folder) throws IOException {
+        WatchKey key = folder.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        folders.put(key, folder);
+    }
+
+    private boolean isOutput(Path path) {
+        if (outputRootFolder == null) {
+            return false;
+        }
+        // the staging, previous or temporary siblings of the output are ignored as well:
+        return path.startsWith(outputRootFolder) || (Objects.equals(path.getParent(), outputRootFolder.getParent()) && path.getFileName()
+                .toString()
+                .startsWith(outputRootFolder.getFileName() + "."));
+    }
+
+    private void watchLoop() {
+        while (!closed) {
+            try {
+                WatchKey key = watchService.take();
+                Set<Path> changedFiles = new HashSet<>();
+                boolean overflow = false;
+                // wait until no event is received during the debounce duration:
+                while (key != null) {
+                    overflow |= collectEvents(key, changedFiles);
+                    key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+                }
+                if (closed) {
+                    return;
+                }
+                if (overflow) {
+                    publishAll();
+                    registerFolders();
+                } else if (!changedFiles.isEmpty()) {
+                    update(changedFiles);
+                    registerFolders();
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (RuntimeException | IOException e) {
+                listener().warning("Could not republish the pages: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean collectEvents(WatchKey key, Set<Path> changedFiles) throws IOException {
+        boolean overflow = false;
+        Path folder = folders.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+            } else if (folder != null) {
+                Path file = normalize(folder.resolve((Path) event.context()));
+                if (isOutput(file)) {
+                    continue;
+                }
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(file) && recursiveFolders.stream()
+                        .anyMatch(file::startsWith)) {
+                    // the files created before the registration of the new folder are not notified:
+                    registerAll(file);
+                    try (Stream<Path> stream = Files.walk(file)) {
+                        stream.map(Watcher::normalize)
+                                .forEach(changedFiles::add);
+                    }
+                }
+                changedFiles.add(file);
+            }
+        }
+        if (!key.reset()) {
+            folders.remove(key);
+        }
+        return overflow;
+    }
+
+    private synchronized PublishListener listener() {
+        return plan == null ? Impl.DEFAULT_LISTENER : plan.getParameters()
+                .getListener();
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath()
+                .normalize();
+    }
+
+    /**
+     * Stop watching the input folders.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        WatchService service;
+        Thread watchThread;
+        synchronized (this) {
+            service = watchService;
+            watchThread = thread;
+        }
+        if (service != null) {
+            service.close();
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+    }
+}
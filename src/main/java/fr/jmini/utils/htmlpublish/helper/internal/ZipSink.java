@@ -0,0 +1,142 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import fr.jmini.utils.htmlpublish.helper.OutputSink;
+
+/**
+ * Write the files of the output folder as entries of a zip (or jar) archive. The archive is written to a temporary file, that replaces the archive at the end of the publication.
+ * <p>
+ * The entries are written in the order of the publication, with a constant time, so that publishing the same input twice produces the same archive. The files located outside of the output folder (catalogs) are written to
+ * the file system.
+ */
+class ZipSink implements OutputSink {
+
+    /**
+     * Constant time of the entries. The local time zone is used because the zip format stores the time as a local date and time: the stored value is then the same in all time zones.
+     */
+    private static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    private final Path archiveFile;
+    private final Path temporaryFile;
+    private final ZipOutputStream out;
+    private final Set<String> entries = new LinkedHashSet<>();
+
+    ZipSink(Path archiveFile) throws IOException {
+        this.archiveFile = archiveFile;
+        this.temporaryFile = archiveFile.resolveSibling(archiveFile.getFileName() + ".tmp");
+        Path parent = archiveFile.toAbsolutePath()
+                .getParent();
+        if (parent != null) {
+            Impl.createFolders(parent);
+        }
+        this.out = new ZipOutputStream(Files.newOutputStream(temporaryFile));
+    }
+
+    private String entryName(Path file) {
+        StringBuilder sb = new StringBuilder();
+        for (Path element : archiveFile.relativize(file)) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(element.toString());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized boolean exists(Path file) {
+        if (!file.startsWith(archiveFile)) {
+            return Files.exists(file);
+        }
+        return entries.contains(entryName(file));
+    }
+
+    @Override
+    public synchronized void write(Path file, byte[] content) throws IOException {
+        if (!file.startsWith(archiveFile)) {
+            Impl.createFolders(file.getParent());
+            Files.write(file, content);
+            return;
+        }
+        putEntry(file);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    @Override
+    public synchronized void copy(Path source, Path file) throws IOException {
+        if (!file.startsWith(archiveFile)) {
+            Impl.createFolders(file.getParent());
+            Files.copy(source, file, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        putEntry(file);
+        Files.copy(source, out);
+        out.closeEntry();
+    }
+
+    /**
+     * An entry can not be replaced: writing the same file twice fails, instead of keeping one of the two contents.
+     */
+    private void putEntry(Path file) throws IOException {
+        String name = entryName(file);
+        if (!entries.add(name)) {
+            throw new IOException("Duplicate entry '" + name + "' in the archive: " + archiveFile);
+        }
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+    }
+
+    @Override
+    public synchronized List<Path> listFiles(Path folder) throws IOException {
+        if (!folder.startsWith(archiveFile)) {
+            try (Stream<Path> walk = Files.walk(folder)) {
+                return walk.filter(Files::isRegularFile)
+                        .collect(Collectors.toList());
+            }
+        }
+        String prefix = entryName(folder);
+        List<Path> result = new ArrayList<>();
+        for (String entry : entries) {
+            if (prefix.isEmpty() || entry.startsWith(prefix + "/")) {
+                result.add(archiveFile.resolve(entry));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void finish() throws IOException {
+        out.close();
+        Files.move(temporaryFile, archiveFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public synchronized void abort() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the file is deleted
+        }
+        try {
+            Files.deleteIfExists(temporaryFile);
+        } catch (IOException e) {
+            // nothing more can be done
+        }
+    }
+}
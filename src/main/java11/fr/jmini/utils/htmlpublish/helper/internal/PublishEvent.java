@@ -0,0 +1,102 @@
+package fr.jmini.utils.htmlpublish.helper.internal;
+
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted during the publication (Java 11 and above implementation of the multi-release jar).
+ */
+class PublishEvent {
+
+    private static final PublishEvent NO_OP = new PublishEvent(null);
+
+    private final HtmlPublishEvent event;
+
+    private PublishEvent(HtmlPublishEvent event) {
+        this.event = event;
+    }
+
+    static PublishEvent pageParse(Path inputFile) {
+        return begin(new PageParseEvent(), toString(inputFile), null);
+    }
+
+    static PublishEvent pageRender(Path inputFile, String strategy) {
+        return begin(new PageRenderEvent(), toString(inputFile), strategy);
+    }
+
+    static PublishEvent assetCopy(String input, String strategy) {
+        return begin(new AssetCopyEvent(), input, strategy);
+    }
+
+    static PublishEvent catalogWrite(String strategy) {
+        return begin(new CatalogWriteEvent(), null, strategy);
+    }
+
+    private static PublishEvent begin(HtmlPublishEvent event, String input, String strategy) {
+        if (!event.isEnabled()) {
+            return NO_OP;
+        }
+        event.inputPath = input;
+        event.strategy = strategy;
+        event.begin();
+        return new PublishEvent(event);
+    }
+
+    void commit(Path outputFile, long bytes) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.outputPath = toString(outputFile);
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    private static String toString(Path path) {
+        return path == null ? null : path.toString();
+    }
+
+    @Category("HtmlPublish Helper")
+    @StackTrace(false)
+    abstract static class HtmlPublishEvent extends Event {
+        @Label("Input Path")
+        String inputPath;
+
+        @Label("Output Path")
+        String outputPath;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Strategy")
+        String strategy;
+    }
+
+    @Name("fr.jmini.htmlpublish.PageParse")
+    @Label("Page Parse")
+    static class PageParseEvent extends HtmlPublishEvent {
+    }
+
+    @Name("fr.jmini.htmlpublish.PageRender")
+    @Label("Page Render")
+    static class PageRenderEvent extends HtmlPublishEvent {
+    }
+
+    @Name("fr.jmini.htmlpublish.AssetCopy")
+    @Label("Asset Copy")
+    static class AssetCopyEvent extends HtmlPublishEvent {
+    }
+
+    @Name("fr.jmini.htmlpublish.CatalogWrite")
+    @Label("Catalog Write")
+    static class CatalogWriteEvent extends HtmlPublishEvent {
+    }
+}
@@ -0,0 +1,131 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Publication of large generated sites. Those tests are excluded from the <code>test</code> task, run them with the <code>scaleTest</code> task.
+ * <p>
+ * The page counts can be changed with the <code>scalePageCounts</code> and <code>scaleCompleteSitePageCounts</code> system properties (comma separated lists).
+ */
+@Tag("scale")
+class ScaleTest {
+
+    /**
+     * Accepted ratio between the cost per page of the largest and of the smallest site.
+     */
+    private static final double MAX_GROWTH = 3.0;
+
+    @Test
+    void testPublishScalesLinearly() throws Exception {
+        int[] pageCounts = pageCounts("scalePageCounts", "1000,10000,50000");
+        // warm up:
+        publish(pageCounts[0], false);
+
+        Result first = publish(pageCounts[0], false);
+        for (int i = 1; i < pageCounts.length; i++) {
+            Result result = publish(pageCounts[i], false);
+            assertThat(result.timePerPage()).as("time per page for %d pages compared to %d pages", result.pageCount, first.pageCount)
+                    .isLessThan(first.timePerPage() * MAX_GROWTH);
+            assertThat(result.sizePerPage()).as("output size per page for %d pages compared to %d pages", result.pageCount, first.pageCount)
+                    .isBetween(first.sizePerPage() / 1.25, first.sizePerPage() * 1.25);
+        }
+    }
+
+    @Test
+    void testPublishCompleteSiteScalesWithOutputSize() throws Exception {
+        // Each page contains the navigation tree of the complete site, so the output size grows with the square of the page count.
+        // The time must grow linearly with the output size.
+        int[] pageCounts = pageCounts("scaleCompleteSitePageCounts", "250,1000");
+        publish(pageCounts[0], true);
+
+        Result first = publish(pageCounts[0], true);
+        for (int i = 1; i < pageCounts.length; i++) {
+            Result result = publish(pageCounts[i], true);
+            assertThat(result.timePerByte()).as("time per output byte for %d pages compared to %d pages", result.pageCount, first.pageCount)
+                    .isLessThan(first.timePerByte() * MAX_GROWTH);
+        }
+    }
+
+    private static int[] pageCounts(String property, String defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim()
+                .isEmpty()) {
+            value = defaultValue;
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    private static Result publish(int pageCount, boolean completeSite) throws IOException {
+        Path folder = Files.createTempDirectory("scale");
+        try {
+            Path inputFolder = folder.resolve("input");
+            Path outputFolder = folder.resolve("output");
+            new SiteGenerator()
+                    .pageCount(pageCount)
+                    .treeDepth(4)
+                    .fanOut(10)
+                    .linksPerPage(10)
+                    .imagesPerPage(2)
+                    .generate(inputFolder);
+
+            ConfigurationHolder config = new ConfigurationHolder()
+                    .inputRootFolder(inputFolder)
+                    .outputRootFolder(outputFolder)
+                    .options(new ConfigurationOptions()
+                            .completeSite(completeSite)
+                            .siteName("Scale"));
+
+            long start = System.nanoTime();
+            HtmlPublishHelper.publish(config);
+            long time = System.nanoTime() - start;
+
+            long size;
+            try (Stream<Path> stream = Files.walk(outputFolder)) {
+                size = stream.filter(p -> p.toString()
+                        .endsWith(".html"))
+                        .mapToLong(p -> p.toFile()
+                                .length())
+                        .sum();
+            }
+            return new Result(pageCount, time, size);
+        } finally {
+            SiteGenerator.deleteFolder(folder);
+        }
+    }
+
+    private static class Result {
+        private final int pageCount;
+        private final long time;
+        private final long size;
+
+        Result(int pageCount, long time, long size) {
+            this.pageCount = pageCount;
+            this.time = time;
+            this.size = size;
+        }
+
+        double timePerPage() {
+            return (double) time / pageCount;
+        }
+
+        double sizePerPage() {
+            return (double) size / pageCount;
+        }
+
+        double timePerByte() {
+            return (double) time / size;
+        }
+    }
+}
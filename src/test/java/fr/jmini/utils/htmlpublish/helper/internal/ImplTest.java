@@ -2,21 +2,45 @@ package fr.jmini.utils.htmlpublish.helper.internal;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
 import org.junit.jupiter.api.Test;
 
 import fr.jmini.utils.htmlpublish.helper.ConfigurationCatalog;
@@ -26,9 +50,18 @@ import fr.jmini.utils.htmlpublish.helper.ConfigurationHolder;
 import fr.jmini.utils.htmlpublish.helper.ConfigurationOptions;
 import fr.jmini.utils.htmlpublish.helper.ConfigurationPage;
 import fr.jmini.utils.htmlpublish.helper.ConfigurationPageOptions;
+import fr.jmini.utils.htmlpublish.helper.HtmlPublishHelper;
+import fr.jmini.utils.htmlpublish.helper.InMemoryOutputSink;
 import fr.jmini.utils.htmlpublish.helper.IndexHandling;
 import fr.jmini.utils.htmlpublish.helper.LinkToIndexHtmlStrategy;
+import fr.jmini.utils.htmlpublish.helper.PublicationPlan;
+import fr.jmini.utils.htmlpublish.helper.PublishListener;
+import fr.jmini.utils.htmlpublish.helper.Publisher;
+import fr.jmini.utils.htmlpublish.helper.PublishReport;
+import fr.jmini.utils.htmlpublish.helper.PublishReport.Phase;
+import fr.jmini.utils.htmlpublish.helper.PublishWatcher;
 import fr.jmini.utils.htmlpublish.helper.RewriteStrategy;
+import fr.jmini.utils.htmlpublish.helper.SiteGenerator;
 import fr.jmini.utils.htmlpublish.helper.internal.Impl.HrefHolder;
 
 class ImplTest {
@@ -2063,6 +2096,1420 @@ class ImplTest {
                 "two.html");
     }
 
+    @Test
+    void testCompiledSelectors() throws Exception {
+        Path outputFolder = Files.createTempDirectory("test")
+                .resolve("output");
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(outputFolder)
+                .defaultPageOptions(new ConfigurationPageOptions()
+                        .titleSelector("h1")
+                        .sitePageSelector("div#content"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true));
+
+        Parameters parameters = Impl.prepareParameters(config);
+        assertThat(parameters.getCompiledSelectors()).containsOnlyKeys("h1", "div#content");
+        List<PageHolder> pages = parameters.getAllPageHolders();
+        assertThat(pages).isNotEmpty()
+                .allMatch(p -> p.getPageOptions() == parameters.getDefaultPageOptions());
+
+        Document doc = Jsoup.parse("<html><head><title>Title</title></head><body><h1>Heading</h1><div id=\"content\"><p>Text</p></div></body></html>");
+        assertThat(parameters.getDefaultPageOptions()
+                .selectTitle(doc)
+                .text()).isEqualTo("Heading");
+        assertThat(parameters.getDefaultPageOptions()
+                .selectSitePage(doc)
+                .id()).isEqualTo("content");
+
+        ConfigurationHolder invalidConfig = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(outputFolder)
+                .defaultPageOptions(new ConfigurationPageOptions()
+                        .sitePageSelector("div[content"));
+        assertThatThrownBy(() -> Impl.prepareParameters(invalidConfig)).isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("Invalid selector 'div[content' for the page option 'sitePageSelector'");
+    }
+
+    @Test
+    void testGeneratedSite() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        List<Path> generated = new SiteGenerator()
+                .pageCount(30)
+                .treeDepth(3)
+                .fanOut(2)
+                .imagesPerPage(2)
+                .sharedAssets(false)
+                .pagesYaml(true)
+                .generate(inputFolder);
+        assertThat(generated).hasSize(30);
+        assertThat(inputFolder.resolve("folder0/pages.yaml")).exists();
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .completeSite(true));
+
+        Parameters parameters = Impl.prepareParameters(config);
+        assertThat(computeListOfPages(parameters)).hasSize(30);
+
+        Impl.run(config);
+        for (Path page : generated) {
+            assertThat(outputFolder.resolve(inputFolder.relativize(page))).isRegularFile();
+        }
+        try (Stream<Path> stream = Files.list(outputFolder.resolve("images"))) {
+            assertThat(stream.count()).isEqualTo(60 + 6);
+        }
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testDocumentsAreReleased() throws Exception {
+        Path outputFolder = Files.createTempDirectory("test");
+        List<Parameters> params = new ArrayList<>();
+        List<Long> loadedDocuments = new ArrayList<>();
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .completeSite(true))
+                .listener(new PublishListener() {
+                    @Override
+                    public void pageFinished(Path inputFile, Path outputFile) {
+                        loadedDocuments.add(params.get(0)
+                                .getAllPageHolders()
+                                .stream()
+                                .filter(PageHolder::isDocumentLoaded)
+                                .count());
+                    }
+                });
+        Parameters param = Impl.prepareParameters(config);
+        params.add(param);
+
+        // the titles displayed in the navigation are read without keeping the documents:
+        for (PageHolder page : param.getAllPageHolders()) {
+            assertThat(page.getTitle()).isNotEmpty();
+        }
+        assertThat(param.getAllPageHolders()).noneMatch(PageHolder::isDocumentLoaded);
+
+        Impl.publish(param, page -> true, true, true);
+        assertThat(loadedDocuments).isNotEmpty()
+                .containsOnly(0L);
+
+        SiteGenerator.deleteFolder(outputFolder);
+    }
+
+    @Test
+    void testPublishReport() throws Exception {
+        Path outputFolder = Files.createTempDirectory("test")
+                .resolve("output");
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .completeSite(true));
+
+        PublishReport report = HtmlPublishHelper.publishWithReport(config);
+        assertThat(report.getPublishedPages()).isEqualTo(11);
+        assertThat(report.getSlowestPages()).hasSize(10);
+        assertThat(report.getSlowestPages()
+                .get(0)
+                .getDuration()).isGreaterThanOrEqualTo(report.getSlowestPages()
+                        .get(9)
+                        .getDuration());
+        assertThat(report.getPhaseDuration(Phase.PARSING)).isGreaterThan(Duration.ZERO);
+        assertThat(report.getPhaseDuration(Phase.RENDERING)).isGreaterThan(Duration.ZERO);
+        assertThat(report.getTotalDuration()).isGreaterThanOrEqualTo(report.getPhaseDuration(Phase.PLANNING)
+                .plus(report.getPhaseDuration(Phase.RENDERING)));
+        assertThat(report.getBytesRead()).isPositive();
+        assertThat(report.getBytesWritten()).isPositive();
+        // the site resources (css, js, images and fonts) are written once for the whole publication:
+        assertThat(report.getFilesCopied()).isEqualTo(20);
+        assertThat(report.getFilesSkipped()).isZero();
+
+        // the title selector is compiled for the default page options, the configured pages get it from the cache:
+        PublishReport pagesReport = Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(outputFolder.resolveSibling("pages"))
+                .addPage(new ConfigurationPage().input(CASE3_CHAPTER2)
+                        .includeChildFolders(true))
+                .addPage(new ConfigurationPage().input(CASE3_TWO)));
+        assertThat(pagesReport.getCacheHits()).isEqualTo(2);
+
+        String json = report.toJson();
+        assertThat(json).startsWith("{\n  \"totalMillis\": ")
+                .contains("\"phases\": {\n    \"planning\": ")
+                .contains("\"linkRewrite\": ")
+                .contains("\"publishedPages\": 11,\n")
+                .contains("\"filesCopied\": 20,\n")
+                .contains("\"slowestPages\": [\n    { \"inputFile\": \"")
+                .endsWith("\n  ]\n}");
+    }
+
+    @Test
+    void testPublishListener() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Files.createDirectories(inputFolder);
+        Files.write(inputFolder.resolve("page.html"), "<html><head><title>Page</title></head><body><h2>No id</h2><img src=\"missing.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+
+        List<String> events = new ArrayList<>();
+        PublishListener listener = new PublishListener() {
+            @Override
+            public synchronized void planningCompleted(int pageCount) {
+                events.add("planning " + pageCount);
+            }
+
+            @Override
+            public synchronized void pageStarted(Path inputFile, Path outputFile) {
+                events.add("started " + inputFile.getFileName());
+            }
+
+            @Override
+            public synchronized void pageFinished(Path inputFile, Path outputFile) {
+                events.add("finished " + outputFile.getFileName());
+            }
+
+            @Override
+            public synchronized void assetCopied(String source, Path outputFile) {
+                events.add("asset");
+            }
+
+            @Override
+            public synchronized void warning(String message) {
+                events.add("warning " + message);
+            }
+        };
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(folder.resolve("output"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .createToc(true))
+                .listener(listener);
+        Impl.run(config);
+
+        assertThat(events.get(0)).isEqualTo("planning 1");
+        assertThat(events.get(1)).isEqualTo("started page.html");
+        assertThat(events).contains("warning File 'missing.png' is missing")
+                .contains("warning id is not found for node h2 'No id'");
+        // 20 site resources (css, js, images and fonts):
+        assertThat(events).filteredOn("asset"::equals)
+                .hasSize(20);
+        assertThat(events.get(events.size() - 1)).isEqualTo("finished page.html");
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPublisherRecentlyModifiedFile() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder);
+        Path image = inputFolder.resolve("image.png");
+        Files.write(inputFolder.resolve("a.html"), "<html><head><title>Page A</title></head><body><p>A</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(image, new byte[] { 1, 2, 3 });
+
+        Publisher publisher = new Publisher();
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .clearOutputRootFolder(true)
+                        .resourcesRewriteStrategy(RewriteStrategy.SHORT_SHA1_SUFFIX));
+        publisher.publish(config);
+        Path first = findSingleFile(outputFolder.resolve("images"));
+
+        // same size and same modification time, within the resolution of the modification time:
+        FileTime lastModified = Files.getLastModifiedTime(image);
+        Files.write(image, new byte[] { 4, 5, 6 });
+        Files.setLastModifiedTime(image, lastModified);
+        publisher.publish(config);
+        Path second = findSingleFile(outputFolder.resolve("images"));
+        assertThat(second.getFileName()).isNotEqualTo(first.getFileName());
+        assertThat(Files.readAllBytes(second)).containsExactly(4, 5, 6);
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPublisherConcurrentPublications() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        ConfigurationOptions options = new ConfigurationOptions()
+                .completeSite(true)
+                .imagesOutputFolder("img")
+                .resourcesRewriteStrategy(RewriteStrategy.SHORT_SHA1_SUFFIX);
+        ConfigurationCatalog catalog = new ConfigurationCatalog().outputFile(folder.resolve("catalog.txt"));
+
+        Publisher publisher = new Publisher();
+        PublishReport first = publisher.publish(new ConfigurationHolder()
+                .inputRootFolder(CASE1_FOLDER)
+                .outputRootFolder(folder.resolve("output0"))
+                .options(options)
+                .addCatalog(catalog));
+
+        // the configuration is not modified by the publication:
+        assertThat(options.getImagesOutputFolder()).isEqualTo("img");
+        assertThat(catalog.getFolder()).isNull();
+        assertThat(catalog.getStrategy()).isNull();
+        assertThat(catalog.getOutputAction()).isNull();
+
+        int count = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        List<Future<PublishReport>> futures = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            ConfigurationHolder config = new ConfigurationHolder()
+                    .inputRootFolder(CASE1_FOLDER)
+                    .outputRootFolder(folder.resolve("output" + i))
+                    .options(options);
+            futures.add(executor.submit(() -> publisher.publish(config)));
+        }
+        for (Future<PublishReport> future : futures) {
+            // site resources and hashes of the images are taken from the cache:
+            assertThat(future.get()
+                    .getCacheHits()).isGreaterThan(first.getCacheHits());
+        }
+        executor.shutdown();
+
+        for (int i = 1; i <= count; i++) {
+            assertSameContent(folder.resolve("output0"), folder.resolve("output" + i));
+        }
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testCopyOptions() throws Exception {
+        // every field is set to a value that is not its default value:
+        ConfigurationOptions options = new ConfigurationOptions();
+        List<Field> fields = new ArrayList<>();
+        for (Field field : ConfigurationOptions.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            field.setAccessible(true);
+            fields.add(field);
+            Class<?> type = field.getType();
+            Object value = field.get(options);
+            if (type == boolean.class) {
+                field.set(options, !((Boolean) value));
+            } else if (type == int.class) {
+                field.set(options, ((Integer) value) + 1);
+            } else if (type == String.class) {
+                field.set(options, "value-" + field.getName());
+            } else if (type.isEnum()) {
+                Object[] constants = type.getEnumConstants();
+                field.set(options, constants[(((Enum<?>) value).ordinal() + 1) % constants.length]);
+            } else {
+                fail("Unexpected type of the field '" + field.getName() + "': " + type);
+            }
+        }
+        assertThat(fields).isNotEmpty();
+
+        ConfigurationOptions copy = Impl.copyOptions(options);
+        for (Field field : fields) {
+            assertThat(field.get(copy)).as("Field '%s' copied", field.getName())
+                    .isEqualTo(field.get(options));
+        }
+    }
+
+    @Test
+    void testPublicationPlan() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(folder.resolve("site"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true));
+
+        Publisher publisher = new Publisher();
+        PublicationPlan plan = publisher.plan(config);
+        assertThat(plan.getPageCount()).isEqualTo(11);
+        assertThat(plan.getOutputRootFolder()).isEqualTo(folder.resolve("site")
+                .toAbsolutePath());
+        assertThat(plan.getPages()).hasSize(1);
+        PublicationPlan.Page root = plan.getPages()
+                .get(0);
+        assertThat(root.getTitle()).isEqualTo("case3");
+        assertThat(root.getChildren()).isNotEmpty();
+        assertThat(plan.getSiteName()).isEqualTo("Page - One");
+
+        // the plan is published several times, with different options:
+        PublishReport siteReport = publisher.publish(plan);
+        PublishReport rawReport = publisher.publish(plan, folder.resolve("raw"), new ConfigurationOptions());
+        PublishReport siteReport2 = publisher.publish(plan, folder.resolve("site2"), new ConfigurationOptions().completeSite(true));
+        assertThat(siteReport.getPublishedPages()).isEqualTo(11);
+        assertThat(rawReport.getPublishedPages()).isEqualTo(11);
+        // the documents parsed by the first publication are reused:
+        assertThat(siteReport.getPhaseDuration(Phase.PARSING)).isGreaterThan(Duration.ZERO);
+        assertThat(siteReport2.getPhaseDuration(Phase.PARSING)).isEqualTo(Duration.ZERO);
+
+        // the output is the same as the one of the regular publications:
+        Impl.run(config.outputRootFolder(folder.resolve("expected-site")));
+        assertSameContent(folder.resolve("expected-site"), folder.resolve("site"));
+        assertSameContent(folder.resolve("expected-site"), folder.resolve("site2"));
+        Impl.run(config.outputRootFolder(folder.resolve("expected-raw"))
+                .options(new ConfigurationOptions()));
+        assertSameContent(folder.resolve("expected-raw"), folder.resolve("raw"));
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPublicationPlanDocumentsAreNotRetained() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(folder.resolve("site"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true));
+        PublisherCache cache = new PublisherCache();
+        Plan plan = Impl.plan(config, cache);
+
+        Impl.run(plan, null, null, cache);
+        Impl.run(plan, folder.resolve("raw"), new ConfigurationOptions(), cache);
+
+        // the documents of the plan are only softly referenced, the published pages release their clones:
+        assertThat(plan.getParameters()
+                .getAllPageHolders()).noneMatch(PageHolder::isDocumentLoaded);
+        Impl.run(config.outputRootFolder(folder.resolve("expected-site")));
+        assertSameContent(folder.resolve("expected-site"), folder.resolve("site"));
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testRenderPage() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(folder.resolve("output"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true));
+
+        Publisher publisher = new Publisher();
+        PublicationPlan plan = publisher.plan(config);
+
+        // only the requested page is rendered, its resources are copied to the output folder:
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        publisher.renderPage(plan, Paths.get("chapter1/sec5.html"), out);
+        byte[] sec5 = out.toByteArray();
+        assertThat(folder.resolve("output/chapter1/sec5.html")).doesNotExist();
+        assertThat(folder.resolve("output/css/site.css")).isRegularFile();
+
+        // the page can be designated by its input file, its output file or its folder:
+        out.reset();
+        publisher.renderPage(plan, CASE3_FOLDER.resolve("chapter2/sub-a/index.html")
+                .toAbsolutePath(), out);
+        byte[] subA = out.toByteArray();
+        out.reset();
+        publisher.renderPage(plan, folder.resolve("output/chapter2/sub-a/index.html"), out);
+        assertThat(out.toByteArray()).isEqualTo(subA);
+        out.reset();
+        publisher.renderPage(plan, Paths.get("chapter2/sub-a"), out);
+        assertThat(out.toByteArray()).isEqualTo(subA);
+
+        // same content as the published pages:
+        publisher.publish(plan);
+        assertThat(folder.resolve("output/chapter1/sec5.html")).hasBinaryContent(sec5);
+        assertThat(folder.resolve("output/chapter2/sub-a/index.html")).hasBinaryContent(subA);
+
+        assertThatThrownBy(() -> publisher.renderPage(plan, Paths.get("unknown.html"), new ByteArrayOutputStream())).isInstanceOf(IllegalStateException.class)
+                .hasMessage("No page to publish corresponds to the path: unknown.html");
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testRenderPageGzipOutputFiles() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path outputFolder = folder.resolve("output");
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .gzipOutputFiles(true)
+                        .gzipMinimumSize(10));
+        PublisherCache cache = new PublisherCache();
+        Plan plan = Impl.plan(config, cache);
+
+        // the compressed copies of the resources are written before the page is returned:
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Impl.renderPage(plan, Paths.get("chapter1/sec5.html"), out, cache);
+        byte[] first = out.toByteArray();
+        Path sidecar = outputFolder.resolve("css/site.css.gz");
+        assertThat(sidecar).isRegularFile();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(sidecar))) {
+            assertThat(in).hasSameContentAs(Files.newInputStream(outputFolder.resolve("css/site.css")));
+        }
+        FileTime past = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(sidecar, past);
+
+        out.reset();
+        Impl.renderPage(plan, Paths.get("chapter1/sec5.html"), out, cache);
+        assertThat(out.toByteArray()).isEqualTo(first);
+        assertThat(Files.getLastModifiedTime(sidecar)).isEqualTo(past);
+
+        // nothing is kept by the reused render parameters:
+        Parameters renderParameters = plan.getRenderParameters(cache);
+        assertThat(renderParameters.pollPendingTask()).isNull();
+        assertThat(renderParameters.getProducedFiles()).isEmpty();
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testWatcherUpdate() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Files.createDirectories(inputFolder);
+        Path pageA = inputFolder.resolve("a.html")
+                .toAbsolutePath();
+        Path pageB = inputFolder.resolve("b.html")
+                .toAbsolutePath();
+        Path image = inputFolder.resolve("image.png")
+                .toAbsolutePath();
+        Files.write(pageA, "<html><head><title>Page A</title></head><body><p>A</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(pageB, "<html><head><title>Page B</title></head><body><p>B</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(image, new byte[] { 1, 2, 3 });
+
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(folder.resolve("output"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true))
+                .listener(new PublishListener() {
+                    @Override
+                    public void pageStarted(Path inputFile, Path outputFile) {
+                        started.add(inputFile.getFileName()
+                                .toString());
+                    }
+                });
+        try (Watcher watcher = new Watcher(config, new PublisherCache(), Duration.ofMillis(50))) {
+            watcher.publishAll();
+            assertThat(started).containsExactlyInAnyOrder("a.html", "b.html");
+
+            // content modified: only the page is rendered again
+            started.clear();
+            Files.write(pageB, "<html><head><title>Page B</title></head><body><p>B modified</p></body></html>".getBytes(StandardCharsets.UTF_8));
+            watcher.update(Collections.singleton(pageB));
+            assertThat(started).containsExactly("b.html");
+            assertThat(Impl.readFile(folder.resolve("output/b.html"))).contains("B modified");
+
+            // resource modified: the pages using it are rendered again, the resource is copied again
+            started.clear();
+            Files.write(image, new byte[] { 4, 5, 6, 7 });
+            watcher.update(Collections.singleton(image));
+            assertThat(started).containsExactly("a.html");
+
+            // title modified: the navigation of all pages is modified
+            started.clear();
+            Files.write(pageA, "<html><head><title>Page A2</title></head><body><p>A</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+            watcher.update(Collections.singleton(pageA));
+            assertThat(started).containsExactlyInAnyOrder("a.html", "b.html");
+
+            // page added: the page tree is modified
+            started.clear();
+            Path pageC = inputFolder.resolve("c.html")
+                    .toAbsolutePath();
+            Files.write(pageC, "<html><head><title>Page C</title></head><body><p>C</p></body></html>".getBytes(StandardCharsets.UTF_8));
+            watcher.update(Collections.singleton(pageC));
+            assertThat(started).containsExactlyInAnyOrder("a.html", "b.html", "c.html");
+        }
+
+        // same output as a complete publication:
+        Path expected = folder.resolve("expected");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(expected)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        assertSameContent(expected, folder.resolve("output"));
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPublishWatcher() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Files.createDirectories(inputFolder);
+        Path page = inputFolder.resolve("page.html");
+        Files.write(page, "<html><head><title>Page</title></head><body><p>Initial</p></body></html>".getBytes(StandardCharsets.UTF_8));
+
+        CountDownLatch republished = new CountDownLatch(1);
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(folder.resolve("output"))
+                .listener(new PublishListener() {
+                    @Override
+                    public void pageFinished(Path inputFile, Path outputFile) {
+                        if (Impl.readFile(outputFile)
+                                .contains("Modified")) {
+                            republished.countDown();
+                        }
+                    }
+                });
+        try (PublishWatcher watcher = new Publisher().watch(config, Duration.ofMillis(50))) {
+            assertThat(watcher.getInitialReport()
+                    .getPublishedPages()).isEqualTo(1);
+            Files.write(page, "<html><head><title>Page</title></head><body><p>Modified</p></body></html>".getBytes(StandardCharsets.UTF_8));
+            assertThat(republished.await(30, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(Impl.readFile(folder.resolve("output/page.html"))).contains("Modified");
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPartialPublish() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder);
+        Path pageA = inputFolder.resolve("a.html");
+        Path pageB = inputFolder.resolve("b.html");
+        Path image = inputFolder.resolve("image.png");
+        Files.write(pageA, "<html><head><title>Page A</title></head><body><p>A</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(pageB, "<html><head><title>Page B</title></head><body><p>B</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(image, new byte[] { 1, 2, 3 });
+
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        ConfigurationOptions options = new ConfigurationOptions()
+                .completeSite(true);
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(options)
+                .listener(new PublishListener() {
+                    @Override
+                    public void pageStarted(Path inputFile, Path outputFile) {
+                        started.add(inputFile.getFileName()
+                                .toString());
+                    }
+                });
+
+        // no manifest: all pages are published
+        HtmlPublishHelper.publish(config, Collections.emptyList());
+        assertThat(started).containsExactlyInAnyOrder("a.html", "b.html");
+        // the manifest is not published with the site:
+        assertThat(folder.resolve("output.html-publish-manifest")).isRegularFile();
+        assertThat(outputFolder.resolve(".html-publish-manifest")).doesNotExist();
+
+        started.clear();
+        PublishReport report = HtmlPublishHelper.publishWithReport(config, Collections.emptyList());
+        assertThat(started).isEmpty();
+        assertThat(report.getPublishedPages()).isEqualTo(0);
+
+        // content modified:
+        started.clear();
+        Files.write(pageB, "<html><head><title>Page B</title></head><body><p>B modified</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        HtmlPublishHelper.publish(config, Collections.singletonList(pageB));
+        assertThat(started).containsExactly("b.html");
+
+        // resource modified:
+        started.clear();
+        Files.write(image, new byte[] { 4, 5, 6, 7 });
+        HtmlPublishHelper.publish(config, Collections.singletonList(image));
+        assertThat(started).containsExactly("a.html");
+
+        // title modified, displayed in the navigation of all pages:
+        started.clear();
+        Files.write(pageA, "<html><head><title>Page A2</title></head><body><p>A</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        HtmlPublishHelper.publish(config, Collections.singletonList(pageA));
+        assertThat(started).containsExactlyInAnyOrder("a.html", "b.html");
+
+        // options modified:
+        started.clear();
+        options.setCreateToc(true);
+        HtmlPublishHelper.publish(config, Collections.emptyList());
+        assertThat(started).containsExactlyInAnyOrder("a.html", "b.html");
+
+        // same output as a complete publication:
+        Path expected = folder.resolve("expected");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(expected)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .createToc(true)));
+        assertSameContent(expected, outputFolder);
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPartialPublishRemovedPage() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Path manifestFile = folder.resolve("cache/manifest.txt");
+        Files.createDirectories(inputFolder.resolve("sub"));
+        Path pageB = inputFolder.resolve("sub/b.html");
+        Files.write(inputFolder.resolve("a.html"), "<html><head><title>Page A</title></head><body><p>A</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(pageB, "<html><head><title>Page B</title></head><body><p>B</p></body></html>".getBytes(StandardCharsets.UTF_8));
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .manifestFile(manifestFile)
+                .options(new ConfigurationOptions()
+                        .syncOutputRootFolder(true)
+                        .gzipOutputFiles(true)
+                        .gzipMinimumSize(0));
+
+        HtmlPublishHelper.publish(config, Collections.emptyList());
+        assertThat(manifestFile).isRegularFile();
+        assertThat(outputFolder.resolve("sub/b.html")).isRegularFile();
+        assertThat(outputFolder.resolve("sub/b.html.gz")).isRegularFile();
+
+        // a synchronized complete publication keeps the manifest:
+        HtmlPublishHelper.publish(config);
+        assertThat(manifestFile).isRegularFile();
+
+        // page removed, its output files are deleted:
+        Files.delete(pageB);
+        HtmlPublishHelper.publish(config, Collections.singletonList(pageB));
+        assertThat(outputFolder.resolve("sub")).doesNotExist();
+        assertThat(outputFolder.resolve("a.html")).isRegularFile();
+        assertThat(outputFolder.resolve("a.html.gz")).isRegularFile();
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPartialPublishLinks() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder);
+        Path pageB = inputFolder.resolve("b.html");
+        Files.write(inputFolder.resolve("a.html"), "<html><head><title>Page A</title></head><body><p><a href=\"b.html\">B</a></p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(pageB, "<html><head><title>Page B</title></head><body><p>B</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(inputFolder.resolve("c.html"), "<html><head><title>Page C</title></head><body><p>C</p></body></html>".getBytes(StandardCharsets.UTF_8));
+
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .listener(new PublishListener() {
+                    @Override
+                    public void pageStarted(Path inputFile, Path outputFile) {
+                        started.add(inputFile.getFileName()
+                                .toString());
+                    }
+                });
+        HtmlPublishHelper.publish(config, Collections.emptyList());
+        assertThat(started).containsExactlyInAnyOrder("a.html", "b.html", "c.html");
+
+        // page added, not linked by the other pages:
+        started.clear();
+        Path pageD = inputFolder.resolve("d.html");
+        Files.write(pageD, "<html><head><title>Page D</title></head><body><p><a href=\"c.html\">C</a></p></body></html>".getBytes(StandardCharsets.UTF_8));
+        HtmlPublishHelper.publish(config, Collections.singletonList(pageD));
+        assertThat(started).containsExactly("d.html");
+
+        // page deleted, only the page linking to it is published again:
+        started.clear();
+        Files.delete(pageB);
+        HtmlPublishHelper.publish(config, Collections.singletonList(pageB));
+        assertThat(started).containsExactly("a.html");
+
+        // link added to a page, recorded for the next publications:
+        started.clear();
+        Files.write(pageB, "<html><head><title>Page B</title></head><body><p><a href=\"c.html\">C</a></p></body></html>".getBytes(StandardCharsets.UTF_8));
+        HtmlPublishHelper.publish(config, Collections.singletonList(pageB));
+        assertThat(started).containsExactlyInAnyOrder("a.html", "b.html");
+
+        started.clear();
+        HtmlPublishHelper.publish(config, Collections.emptyList());
+        assertThat(started).isEmpty();
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testSkipUnchangedOutputFiles() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder);
+        Path pageA = inputFolder.resolve("a.html");
+        Files.write(pageA, "<html><head><title>Page A</title></head><body><p>A</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(inputFolder.resolve("b.html"), "<html><head><title>Page B</title></head><body><p>B</p></body></html>".getBytes(StandardCharsets.UTF_8));
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .skipUnchangedOutputFiles(true));
+        Impl.run(config);
+        FileTime past = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(outputFolder.resolve("a.html"), past);
+        Files.setLastModifiedTime(outputFolder.resolve("b.html"), past);
+
+        PublishReport report = Impl.run(config);
+        assertThat(report.getFilesSkipped()).isEqualTo(2);
+        assertThat(Files.getLastModifiedTime(outputFolder.resolve("a.html"))).isEqualTo(past);
+        assertThat(Files.getLastModifiedTime(outputFolder.resolve("b.html"))).isEqualTo(past);
+
+        Files.write(pageA, "<html><head><title>Page A</title></head><body><p>C</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Impl.run(config);
+        assertThat(Files.getLastModifiedTime(outputFolder.resolve("a.html"))).isNotEqualTo(past);
+        assertThat(Impl.readFile(outputFolder.resolve("a.html"))).contains("<p>C</p>");
+        assertThat(Files.getLastModifiedTime(outputFolder.resolve("b.html"))).isEqualTo(past);
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testSyncOutputRootFolder() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder);
+        Path pageB = inputFolder.resolve("b.html");
+        Files.write(inputFolder.resolve("a.html"), "<html><head><title>Page A</title></head><body><p>A</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(pageB, "<html><head><title>Page B</title></head><body><p>B</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(inputFolder.resolve("image.png"), new byte[] { 1, 2, 3 });
+        Files.createDirectories(outputFolder.resolve("old/folder"));
+        Files.write(outputFolder.resolve("old/folder/stale.html"), new byte[] { 1 });
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .skipUnchangedOutputFiles(true)
+                        .syncOutputRootFolder(true));
+        Impl.run(config);
+        assertThat(outputFolder.resolve("old")).doesNotExist();
+        assertThat(outputFolder.resolve("b.html")).isRegularFile();
+        assertThat(outputFolder.resolve("images/image.png")).isRegularFile();
+        assertThat(outputFolder.resolve("css/site.css")).isRegularFile();
+        FileTime past = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(outputFolder.resolve("images/image.png"), past);
+
+        // page deleted:
+        Files.delete(pageB);
+        Impl.run(config);
+        assertThat(outputFolder.resolve("b.html")).doesNotExist();
+        assertThat(Files.getLastModifiedTime(outputFolder.resolve("images/image.png"))).isEqualTo(past);
+
+        // same output as a publication in an empty folder:
+        Path expected = folder.resolve("expected");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(expected)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        assertThat(renderFolder(outputFolder)).isEqualTo(renderFolder(expected).replace("expected", "output"));
+        assertSameContent(expected, outputFolder);
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testSyncOutputRootFolderModifiedResource() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder.resolve("images"));
+        Path image = inputFolder.resolve("images/i.png");
+        Files.write(inputFolder.resolve("a.html"), "<html><head><title>Page A</title></head><body><p>A</p><img src=\"images/i.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(image, new byte[] { 1, 2, 3 });
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .syncOutputRootFolder(true));
+        Impl.run(config);
+        assertThat(Files.readAllBytes(outputFolder.resolve("images/i.png"))).containsExactly(1, 2, 3);
+
+        // same size:
+        Files.write(image, new byte[] { 4, 5, 6 });
+        PublishReport report = Impl.run(config);
+        assertThat(Files.readAllBytes(outputFolder.resolve("images/i.png"))).containsExactly(4, 5, 6);
+        assertThat(report.getFilesCopied()).isEqualTo(1);
+
+        // other size:
+        Files.write(image, new byte[] { 7, 8 });
+        Impl.run(config);
+        assertThat(Files.readAllBytes(outputFolder.resolve("images/i.png"))).containsExactly(7, 8);
+
+        // unchanged:
+        report = Impl.run(config);
+        assertThat(report.getFilesCopied()).isZero();
+        assertThat(report.getFilesSkipped()).isEqualTo(1);
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testStagedPublishing() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder);
+        Path pageA = inputFolder.resolve("a.html");
+        Files.write(pageA, "<html><head><title>Page A</title></head><body><p>A</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(inputFolder.resolve("b.html"), "<html><head><title>Page B</title></head><body><p>B</p></body></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(inputFolder.resolve("image.png"), new byte[] { 1, 2, 3 });
+        Files.createDirectories(outputFolder);
+        Files.write(outputFolder.resolve("stale.html"), new byte[] { 1 });
+
+        ConfigurationOptions options = new ConfigurationOptions()
+                .stagedPublishing(true);
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(options);
+        Impl.run(config);
+        assertThat(outputFolder.resolve("stale.html")).doesNotExist();
+        assertThat(outputFolder.resolve("a.html")).isRegularFile();
+        assertThat(folder.resolve("output.staging")).doesNotExist();
+        assertThat(folder.resolve("output.previous")).doesNotExist();
+        // the output folder is a link to the release folder, replaced atomically by the next publications:
+        assertThat(Files.isSymbolicLink(outputFolder)).isTrue();
+        Path firstRelease = Impl.releaseFolderOf(outputFolder);
+        assertThat(firstRelease).isDirectory();
+
+        // unchanged files are linked from the previous output (whatever the skipUnchangedOutputFiles option):
+        FileTime past = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(outputFolder.resolve("b.html"), past);
+        Files.setLastModifiedTime(outputFolder.resolve("images/image.png"), past);
+        Files.write(pageA, "<html><head><title>Page A</title></head><body><p>C</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        Impl.run(config);
+        assertThat(Impl.readFile(outputFolder.resolve("a.html"))).contains("<p>C</p>");
+        assertThat(Files.getLastModifiedTime(outputFolder.resolve("b.html"))).isEqualTo(past);
+        assertThat(Files.getLastModifiedTime(outputFolder.resolve("images/image.png"))).isEqualTo(past);
+        assertThat(Impl.releaseFolderOf(outputFolder)).isNotEqualTo(firstRelease)
+                .isDirectory();
+        assertThat(firstRelease).doesNotExist();
+        assertThat(folder.resolve("output.link")).doesNotExist();
+
+        // failed publication, the previous output is kept:
+        Path catalogFile = folder.resolve("catalog.txt");
+        Files.write(catalogFile, new byte[0]);
+        ConfigurationHolder failing = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(options)
+                .addCatalog(new ConfigurationCatalog()
+                        .outputFile(catalogFile)
+                        .outputAction(OutputAction.MERGE_AND_FAIL_IF_ABSENT));
+        Files.write(pageA, "<html><head><title>Page A</title></head><body><p>D</p><img src=\"image.png\"></body></html>".getBytes(StandardCharsets.UTF_8));
+        assertThatThrownBy(() -> Impl.run(failing)).isInstanceOf(IllegalStateException.class);
+        assertThat(Impl.readFile(outputFolder.resolve("a.html"))).contains("<p>C</p>");
+        assertThat(folder.resolve("output.staging")).doesNotExist();
+
+        // synchronized publication in the linked output folder:
+        Files.write(outputFolder.resolve("stale.html"), new byte[] { 1 });
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .syncOutputRootFolder(true)));
+        assertThat(Files.isSymbolicLink(outputFolder)).isTrue();
+        assertThat(outputFolder.resolve("stale.html")).doesNotExist();
+        assertThat(Impl.readFile(outputFolder.resolve("a.html"))).contains("<p>D</p>");
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testFolderDeletion() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path outside = folder.resolve("outside");
+        Files.createDirectories(outside);
+        Files.write(outside.resolve("keep.txt"), new byte[] { 1 });
+
+        Path toDelete = folder.resolve("output");
+        for (int i = 0; i < 20; i++) {
+            Path sub = toDelete.resolve("folder" + i + "/sub" + i);
+            Files.createDirectories(sub);
+            for (int j = 0; j < 10; j++) {
+                Files.write(sub.resolve("file" + j + ".html"), new byte[] { 1 });
+            }
+        }
+        Files.createSymbolicLink(toDelete.resolve("link"), outside);
+
+        FolderDeletion.delete(toDelete);
+        assertThat(toDelete).doesNotExist();
+        // symbolic links are not followed:
+        assertThat(outside.resolve("keep.txt")).isRegularFile();
+
+        // nothing to delete:
+        FolderDeletion.delete(toDelete);
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPublishArchive() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path archive = folder.resolve("site.zip");
+        Path expected = folder.resolve("expected");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(archive)
+                .outputArchive(true)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(expected)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        assertThat(archive).isRegularFile();
+        assertThat(folder.resolve("site.zip.tmp")).doesNotExist();
+
+        List<Path> expectedFiles;
+        try (Stream<Path> stream = Files.walk(expected)) {
+            expectedFiles = stream.filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+        List<String> entryNames = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                entryNames.add(entry.getName());
+                try (InputStream in = zip.getInputStream(entry)) {
+                    assertThat(in).hasSameContentAs(new ByteArrayInputStream(Files.readAllBytes(expected.resolve(entry.getName()))));
+                }
+            }
+            assertThat(zip.getEntry("chapter1/sec5.html")
+                    .getTime()).isEqualTo(zip.getEntry("css/site.css")
+                            .getTime());
+        }
+        assertThat(entryNames).containsExactlyInAnyOrderElementsOf(expectedFiles.stream()
+                .map(p -> expected.relativize(p)
+                        .toString()
+                        .replace('\\', '/'))
+                .collect(Collectors.toList()));
+
+        // the archive is reproducible:
+        byte[] first = Files.readAllBytes(archive);
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(archive)
+                .outputArchive(true)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        assertThat(archive).hasBinaryContent(first);
+
+        // without the option, the output is a folder whatever its name:
+        Path zipFolder = folder.resolve("folder.zip");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(zipFolder));
+        assertThat(zipFolder.resolve("chapter1/sec5.html")).isRegularFile();
+
+        // an entry can not be written twice:
+        ZipSink sink = new ZipSink(folder.resolve("duplicate.zip"));
+        sink.write(folder.resolve("duplicate.zip/page.html"), new byte[] { 1 });
+        assertThatThrownBy(() -> sink.write(folder.resolve("duplicate.zip/page.html"), new byte[] { 2 })).isInstanceOf(IOException.class)
+                .hasMessageStartingWith("Duplicate entry 'page.html' in the archive");
+        sink.abort();
+        assertThat(folder.resolve("duplicate.zip.tmp")).doesNotExist();
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPublishInMemory() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path output = folder.resolve("output");
+        Path expected = folder.resolve("expected");
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(output)
+                .outputSink(sink)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(expected)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        assertThat(output).doesNotExist();
+
+        List<Path> expectedFiles;
+        try (Stream<Path> stream = Files.walk(expected)) {
+            expectedFiles = stream.filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+        assertThat(sink.getFiles()).containsExactlyInAnyOrderElementsOf(expectedFiles.stream()
+                .map(p -> output.resolve(expected.relativize(p)))
+                .collect(Collectors.toList()));
+        for (Path expectedFile : expectedFiles) {
+            byte[] expectedContent = Files.readAllBytes(expectedFile);
+            assertThat(sink.getContent(output.resolve(expected.relativize(expectedFile)))).hasValueSatisfying(content -> assertThat(content).isEqualTo(expectedContent));
+        }
+        assertThat(sink.getContent(output.resolve("missing.html"))).isEmpty();
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testPublishFromZipFileSystem() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path zipFile = folder.resolve("input.zip");
+        Path output = folder.resolve("output");
+        Path expected = folder.resolve("expected");
+        Map<String, String> env = Collections.singletonMap("create", "true");
+        try (FileSystem zipFs = FileSystems.newFileSystem(URI.create("jar:" + zipFile.toUri()), env)) {
+            Path inputFolder = zipFs.getPath("/case3");
+            try (Stream<Path> stream = Files.walk(CASE3_FOLDER)) {
+                for (Path p : stream.collect(Collectors.toList())) {
+                    Path target = Impl.resolve(inputFolder, CASE3_FOLDER.relativize(p));
+                    if (Files.isDirectory(p)) {
+                        Files.createDirectories(target);
+                    } else {
+                        Files.copy(p, target);
+                    }
+                }
+            }
+
+            // without manifest, all the pages are published:
+            Impl.run(new ConfigurationHolder()
+                    .inputRootFolder(inputFolder)
+                    .outputRootFolder(output)
+                    .options(new ConfigurationOptions()
+                            .completeSite(true)
+                            .resourcesRewriteStrategy(RewriteStrategy.SHORT_SHA1_SUFFIX)), Collections.emptyList(), new PublisherCache());
+            Impl.run(new ConfigurationHolder()
+                    .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                    .outputRootFolder(expected)
+                    .options(new ConfigurationOptions()
+                            .completeSite(true)
+                            .resourcesRewriteStrategy(RewriteStrategy.SHORT_SHA1_SUFFIX)));
+            assertSameContent(expected, output);
+
+            // partial publication, the paths of the manifest are read with the file system of the input:
+            Path page = inputFolder.resolve("chapter1/sec5.html");
+            Files.write(page, Impl.readFile(page)
+                    .replace("</body>", "<p>Modified</p></body>")
+                    .getBytes(StandardCharsets.UTF_8));
+            PublishReport report = Impl.run(new ConfigurationHolder()
+                    .inputRootFolder(inputFolder)
+                    .outputRootFolder(output)
+                    .options(new ConfigurationOptions()
+                            .completeSite(true)
+                            .resourcesRewriteStrategy(RewriteStrategy.SHORT_SHA1_SUFFIX)), Collections.singleton(page), new PublisherCache());
+            assertThat(report.getPublishedPages()).isEqualTo(1);
+            assertThat(Impl.readFile(output.resolve("chapter1/sec5.html"))).contains("<p>Modified</p>");
+        }
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testGzipOutputFiles() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path output = folder.resolve("output");
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(output)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .syncOutputRootFolder(true)
+                        .gzipOutputFiles(true)
+                        .gzipLevel(6)
+                        .gzipMinimumSize(10));
+        Impl.run(config);
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(output)) {
+            files = stream.filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName()
+                    .toString();
+            Path sidecar = file.resolveSibling(name + ".gz");
+            if (name.endsWith(".html") || name.endsWith(".css") || name.endsWith(".js") || name.endsWith(".svg")) {
+                assertThat(sidecar).isRegularFile();
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(sidecar))) {
+                    assertThat(in).hasSameContentAs(new ByteArrayInputStream(Files.readAllBytes(file)));
+                }
+            } else if (!name.endsWith(".gz")) {
+                assertThat(sidecar).doesNotExist();
+            }
+        }
+        assertThat(output.resolve("chapter1/sec5.html.gz")).isRegularFile();
+
+        // the compressed copies are not stale files:
+        byte[] compressed = Files.readAllBytes(output.resolve("chapter1/sec5.html.gz"));
+        Impl.run(config);
+        assertThat(output.resolve("chapter1/sec5.html.gz")).hasBinaryContent(compressed);
+        assertThat(output.resolve("css/site.css.gz")).isRegularFile();
+
+        Impl.run(config.options(new ConfigurationOptions()
+                .completeSite(true)
+                .clearOutputRootFolder(true)
+                .gzipOutputFiles(true)
+                .gzipMinimumSize(Integer.MAX_VALUE)));
+        assertThat(output.resolve("chapter1/sec5.html")).isRegularFile();
+        assertThat(output.resolve("chapter1/sec5.html.gz")).doesNotExist();
+
+        // the archives are reproducible:
+        Path archive = folder.resolve("site.zip");
+        ConfigurationHolder archiveConfig = new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(archive)
+                .outputArchive(true)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .gzipOutputFiles(true)
+                        .gzipMinimumSize(10));
+        Impl.run(archiveConfig);
+        byte[] archiveContent = Files.readAllBytes(archive);
+        for (int i = 0; i < 5; i++) {
+            Impl.run(archiveConfig);
+            assertThat(archive).hasBinaryContent(archiveContent);
+        }
+
+        assertThatThrownBy(() -> Impl.run(config.options(new ConfigurationOptions()
+                .gzipOutputFiles(true)
+                .gzipLevel(10)))).isInstanceOf(IllegalStateException.class)
+                        .hasMessage("The gzipLevel must be between 1 and 9: 10");
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testCompactOutput() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path input = folder.resolve("input");
+        Files.createDirectories(input);
+        String html = "<!DOCTYPE html>\n<html>\n  <head>\n    <title>Compact</title>\n    <!--[if lt IE 9]><script src=\"html5.js\"></script><![endif]-->\n  </head>\n  <body>\n    <!-- a comment -->\n    <div class=\"content\">\n"
+                + "      <p>Some   <em>emphasized</em>\n        text</p>\n      <pre>line 1\n    line 2</pre>\n      <p><code>a  =  b</code> <span>c</span></p>\n      <textarea>  x\n  y</textarea>\n    </div>\n  </body>\n</html>\n";
+        Files.write(input.resolve("page.html"), html.getBytes(StandardCharsets.UTF_8));
+
+        Path output = folder.resolve("output");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(input)
+                .outputRootFolder(output)
+                .options(new ConfigurationOptions()
+                        .compactOutput(true)));
+        String content = Impl.readFile(output.resolve("page.html"));
+        assertThat(content).isEqualTo("<!doctype html><html><head><title>Compact</title><!--[if lt IE 9]><script src=\"html5.js\"></script><![endif]--></head><body><div class=\"content\">"
+                + "<p>Some <em>emphasized</em> text</p><pre>line 1\n    line 2</pre><p><code>a  =  b</code> <span>c</span></p> <textarea>  x\n  y</textarea> </div></body></html>");
+
+        // complete site:
+        Path siteOutput = folder.resolve("site");
+        Path expectedOutput = folder.resolve("expected");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(siteOutput)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .compactOutput(true)));
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(expectedOutput)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)));
+        String compact = Impl.readFile(siteOutput.resolve("chapter1/sec5.html"));
+        String expected = Impl.readFile(expectedOutput.resolve("chapter1/sec5.html"));
+        assertThat(compact).doesNotContain("\n  <");
+        assertThat(compact.length()).isLessThan(expected.length());
+        // the pretty printer adds whitespace between the generated elements:
+        assertThat(Jsoup.parse(compact)
+                .text()
+                .replace(" ", "")).isEqualTo(Jsoup.parse(expected)
+                        .text()
+                        .replace(" ", ""));
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testOptimizeThemeResources() throws Exception {
+        assertThat(ResourceMinifier.minifyCss("/* comment */\na :hover , b {\n  color: red;\n}\n@media screen and (min-width: 1px) {\n  .x::before { content: \" ; a \"; width: calc(1px + 2px); }\n}\n"))
+                .isEqualTo("a :hover,b{color:red}@media screen and (min-width:1px){.x::before{content:\" ; a \";width:calc(1px + 2px)}}");
+        assertThat(ResourceMinifier.minifyJs("!function(){a()}();\n\n  !function(){b()}()\n!function(){c()}();\n")).isEqualTo("!function(){a()}();!function(){b()}()\n!function(){c()}();");
+
+        Path folder = Files.createTempDirectory("test");
+        Path output = folder.resolve("output");
+        Path expected = folder.resolve("expected");
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(output)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .resourcesRewriteStrategy(RewriteStrategy.SHORT_SHA1_SUFFIX)
+                        .optimizeThemeResources(true)));
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(CASE3_FOLDER.toAbsolutePath())
+                .outputRootFolder(expected)
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .resourcesRewriteStrategy(RewriteStrategy.SHORT_SHA1_SUFFIX)));
+
+        List<String> fonts;
+        try (Stream<Path> stream = Files.list(output.resolve("font"))) {
+            fonts = stream.map(p -> p.getFileName()
+                    .toString())
+                    .collect(Collectors.toList());
+        }
+        assertThat(fonts).hasSize(6)
+                .allMatch(f -> f.endsWith(".woff2"));
+
+        Path css = findSingleFile(output.resolve("css"));
+        Path expectedCss = findSingleFile(expected.resolve("css"));
+        assertThat(css.getFileName()
+                .toString()).startsWith("site_")
+                        .isNotEqualTo(expectedCss.getFileName()
+                                .toString());
+        String cssContent = Impl.readFile(css);
+        assertThat(cssContent).doesNotContain("/*", "format(\"woff\")", "\n");
+        assertThat(Files.size(css)).isLessThan(Files.size(expectedCss));
+        Matcher matcher = Pattern.compile("url\\(([^)]+)\\)")
+                .matcher(cssContent);
+        while (matcher.find()) {
+            assertThat(css.getParent()
+                    .resolve(matcher.group(1))).isRegularFile();
+        }
+        Path js = findSingleFile(output.resolve("js"));
+        assertThat(Files.size(js)).isLessThan(Files.size(findSingleFile(expected.resolve("js"))));
+        assertThat(Impl.readFile(output.resolve("chapter1/sec5.html"))).contains("css/" + css.getFileName(), "js/" + js.getFileName());
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    private static Path findSingleFile(Path folder) throws IOException {
+        try (Stream<Path> stream = Files.list(folder)) {
+            List<Path> files = stream.collect(Collectors.toList());
+            assertThat(files).hasSize(1);
+            return files.get(0);
+        }
+    }
+
+    private static void assertSameContent(Path expectedFolder, Path actualFolder) throws IOException {
+        String expectedTree = renderFolder(expectedFolder);
+        assertThat(renderFolder(actualFolder)).endsWith(expectedTree.substring(expectedTree.indexOf('\n')));
+        List<Path> expectedFiles;
+        try (Stream<Path> stream = Files.walk(expectedFolder)) {
+            expectedFiles = stream.filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+        for (Path expectedFile : expectedFiles) {
+            assertThat(actualFolder.resolve(expectedFolder.relativize(expectedFile))).hasBinaryContent(Files.readAllBytes(expectedFile));
+        }
+    }
+
+    @Test
+    void testDeepTreeNavigationState() throws Exception {
+        int depth = 10;
+        Path inputFolder = Files.createTempDirectory("test")
+                .resolve("input");
+        Path outputFolder = Files.createTempDirectory("test")
+                .resolve("output");
+
+        Path folder = inputFolder;
+        for (int i = 0; i <= depth; i++) {
+            Files.createDirectories(folder);
+            Impl.writeFile(folder.resolve("index.html"), "<html><head><title>Level " + i + "</title></head><body><p>Level " + i + "</p></body></html>");
+            folder = folder.resolve("level" + (i + 1));
+        }
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .options(new ConfigurationOptions()
+                        .completeSite(true));
+
+        Parameters parameters = Impl.prepareParameters(config);
+        List<PageHolder> pages = parameters.getAllPageHolders();
+        assertThat(pages).hasSize(depth + 1);
+        PageHolder root = pages.get(0);
+        PageHolder deepest = pages.get(depth);
+        assertThat(root.isUniqueRoot()).isTrue();
+        assertThat(deepest.getDepth()).isEqualTo(depth);
+
+        for (PageHolder page : pages) {
+            if (page == deepest) {
+                assertThat(Impl.calculateState(page, deepest)).isEqualTo("is-current-page");
+            } else {
+                assertThat(Impl.calculateState(page, deepest)).isEqualTo("is-current-path");
+                assertThat(Impl.calculateState(deepest, page)).isNull();
+            }
+        }
+        assertThat(Impl.calculateState(pages.get(3), pages.get(5))).isEqualTo("is-current-path");
+        assertThat(Impl.calculateState(pages.get(5), pages.get(3))).isNull();
+
+        assertThat(deepest.getBreadcrumbs()).containsExactlyElementsOf(pages.subList(1, depth + 1));
+        assertThat(root.getBreadcrumbs()).isEmpty();
+
+        Impl.run(config);
+
+        String relativePath = Stream.iterate(1, i -> i + 1)
+                .limit(depth)
+                .map(i -> "level" + i + "/")
+                .collect(Collectors.joining()) + "index.html";
+        String content = Impl.readFile(outputFolder.resolve(relativePath));
+        assertThat(content).isNotEmpty()
+                .contains("<li class=\"nav-item is-active is-current-page\" data-depth=\"" + (depth - 1) + "\"><a class=\"nav-link\" href=\"./\">Level " + depth + "</a></li>")
+                .contains("<li class=\"nav-item is-active is-current-path\" data-depth=\"0\"><button class=\"nav-item-toggle\"></button><a class=\"nav-link\" href=\"../../../../../../../../../\">Level 1</a>")
+                .contains("<li><a href=\"../../../../../../../../../\">Level 1</a></li>")
+                .contains("<li><a href=\"./\">Level " + depth + "</a></li>");
+    }
+
+    @Test
+    void testPassThroughWithoutRewritableReference() throws Exception {
+        Path inputFolder = Files.createTempDirectory("test")
+                .resolve("input");
+        Path outputFolder = Files.createTempDirectory("test")
+                .resolve("output");
+        Files.createDirectories(inputFolder.resolve("sub"));
+
+        byte[] plain = "<!DOCTYPE html>\n<HTML><head><title>Caf\u00e9</title></head>\n<body><p>Text &amp; <a href=\"#top\">top</a> <a href=\"https://example.com/\">link</a></body>\r\n</HTML>".getBytes(StandardCharsets.UTF_8);
+        Impl.writeFile(inputFolder.resolve("plain.html"), plain);
+        Impl.writeFile(inputFolder.resolve("sub/page.html"), "<html><head><title>Page</title></head><body><a href=\"../plain.html\">plain</a></body></html>");
+
+        ConfigurationHolder config = new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder);
+
+        Impl.run(config);
+
+        assertThat(Files.readAllBytes(outputFolder.resolve("plain.html"))).isEqualTo(plain);
+        assertThat(Impl.readFile(outputFolder.resolve("sub/page.html"))).contains("<a href=\"../plain.html\">plain</a>")
+                .startsWith("<html>\n <head>");
+    }
+
+    @Test
+    void testHasRewritableReference() throws Exception {
+        assertThat(Impl.hasRewritableReference("<html><body><p>text</p></body></html>")).isFalse();
+        assertThat(Impl.hasRewritableReference("<img src=\"https://example.com/image.png\"><script src='//cdn.example.com/lib.js'></script>")).isFalse();
+        assertThat(Impl.hasRewritableReference("<a href=\"#anchor\">a</a><a href=\"\">b</a><a name=x>c</a><link rel=\"icon\" href=\"favicon.ico\">")).isFalse();
+        assertThat(Impl.hasRewritableReference("<area href=\"page.html\"><div data-src=\"image.png\"></div>")).isFalse();
+
+        assertThat(Impl.hasRewritableReference("<img src=\"image.png\">")).isTrue();
+        assertThat(Impl.hasRewritableReference("<IMG\nSRC = image.png>")).isTrue();
+        assertThat(Impl.hasRewritableReference("<img/src='image.png'>")).isTrue();
+        assertThat(Impl.hasRewritableReference("<image src=\"image.png\">")).isTrue();
+        assertThat(Impl.hasRewritableReference("<script src=\"file.js\"></script>")).isTrue();
+        assertThat(Impl.hasRewritableReference("<link href=\"file.css\" rel=\"Stylesheet\">")).isTrue();
+        assertThat(Impl.hasRewritableReference("<a title=\"a > b\" href=\"page.html#anchor\">link</a>")).isTrue();
+        assertThat(Impl.hasRewritableReference("<a href=\"folder/\">link</a>")).isTrue();
+        assertThat(Impl.hasRewritableReference("<a href=\"&#x68;ttps://example.com\">link</a>")).isTrue();
+        assertThat(Impl.hasRewritableReference("<a href=\"https://example.com\" title=\"unterminated>link</a>")).isTrue();
+    }
+
     private List<String> computeListOfPages(Parameters parameters) {
         List<String> result = parameters.getAllPageHolders()
                 .stream()
@@ -2254,12 +3701,160 @@ class ImplTest {
 
         Element body = Document.createShell("")
                 .body();
-        Impl.createContentToc(options, elementToInsert, hLevel, dataLevel, dataLevelEnd, body);
+        Impl.createContentToc(options, Impl.DEFAULT_LISTENER, elementToInsert, hLevel, dataLevel, dataLevelEnd, body);
 
         String content = body.toString();
         assertThat(content).isEqualTo(expectedContent);
     }
 
+    @Test
+    void testPageTemplate() throws Exception {
+        PageTemplate template = PageTemplate.compile(new ConfigurationOptions().footer("My footer"));
+        Document doc = Jsoup.parse("<html><head><script src=\"head.js\"></script></head><body><p>Some text</p><script src=\"body.js\"></script></body></html>");
+        Elements scripts = doc.getElementsByTag("script");
+
+        PageTemplate.Page page = template.newPage();
+        page.slot(PageTemplate.SLOT_HEAD)
+                .appendElement("title")
+                .text("Caf\u00e9");
+        page.slot(PageTemplate.SLOT_BRAND)
+                .appendElement("a")
+                .attr("href", "index.html")
+                .text("Site");
+        page.slot(PageTemplate.SLOT_BREADCRUMBS)
+                .appendElement("ul");
+        page.slot(PageTemplate.SLOT_ARTICLE)
+                .appendChild(doc.selectFirst("p"));
+        assertThat(page.append(scripts.get(0))).isTrue();
+        assertThat(page.append(scripts.get(1))).isTrue();
+        String content = new String(page.toByteArray(), StandardCharsets.UTF_8);
+
+        assertThat(content).isEqualTo("<!doctype html>\n"
+                + "<html lang=\"en\">\n"
+                + " <head>\n"
+                + "  <meta name=\"viewport\" content=\"width=device-width,initial-scale=1\">\n"
+                + "  <title>Caf&eacute;</title>\n"
+                + "  <script src=\"head.js\"></script>\n"
+                + " </head>\n"
+                + " <body class=\"article\">\n"
+                + "  <header class=\"header\">\n"
+                + "   <nav class=\"navbar\">\n"
+                + "    <div class=\"navbar-brand\">\n"
+                + "     <a href=\"index.html\">Site</a>\n"
+                + "    </div>\n"
+                + "   </nav>\n"
+                + "  </header>\n"
+                + "  <div class=\"body\">\n"
+                + "   <div class=\"nav-container\">\n"
+                + "    <aside class=\"nav\">\n"
+                + "     <div class=\"panels\">\n"
+                + "      <div class=\"nav-panel-menu is-active\" data-panel=\"menu\">\n"
+                + "       <nav class=\"nav-menu\">\n"
+                + "        <h3 class=\"title\"><a href=\"#\"></a></h3>\n"
+                + "       </nav>\n"
+                + "      </div>\n"
+                + "     </div>\n"
+                + "     <div class=\"nav-panel-explore\" data-panel=\"explore\">\n"
+                + "      <div class=\"context\"></div>\n"
+                + "     </div>\n"
+                + "    </aside>\n"
+                + "   </div>\n"
+                + "   <main class=\"article\">\n"
+                + "    <div class=\"toolbar\" role=\"navigation\">\n"
+                + "     <button class=\"nav-toggle\"></button>\n"
+                + "     <nav class=\"breadcrumbs\" aria-label=\"breadcrumbs\">\n"
+                + "      <ul></ul>\n"
+                + "     </nav>\n"
+                + "    </div>\n"
+                + "    <div class=\"content\">\n"
+                + "     <article class=\"doc\">\n"
+                + "      <p>Some text</p>\n"
+                + "     </article>\n"
+                + "    </div>\n"
+                + "   </main>\n"
+                + "  </div>\n"
+                + "  <footer class=\"footer\">\n"
+                + "   <p>My footer</p>\n"
+                + "  </footer>\n"
+                + "  <script src=\"body.js\"></script>\n"
+                + " </body>\n"
+                + "</html>");
+
+        // the fragments produce the same output as the complete document:
+        assertThat(template.isFragmentsVerified()).isTrue();
+        PageTemplate.Page other = template.newPage();
+        other.slot(PageTemplate.SLOT_HEAD)
+                .appendElement("title")
+                .text("Caf\u00e9");
+        other.slot(PageTemplate.SLOT_BRAND)
+                .appendElement("a")
+                .attr("href", "index.html")
+                .text("Site");
+        other.slot(PageTemplate.SLOT_BREADCRUMBS)
+                .appendElement("ul");
+        other.slot(PageTemplate.SLOT_ARTICLE)
+                .appendElement("p")
+                .text("Some text");
+        Elements otherScripts = Jsoup.parse("<html><head><script src=\"head.js\"></script></head><body><script src=\"body.js\"></script></body></html>")
+                .getElementsByTag("script");
+        assertThat(other.append(otherScripts.get(0))).isTrue();
+        assertThat(other.append(otherScripts.get(1))).isTrue();
+        assertThat(new String(PageTemplate.serialize(other.toDocument()), StandardCharsets.UTF_8)).isEqualTo(content);
+    }
+
+    @Test
+    void testCompleteSiteElementsOutsideOfTheShellSlots() throws Exception {
+        Path folder = Files.createTempDirectory("test");
+        Path inputFolder = folder.resolve("input");
+        Path outputFolder = folder.resolve("output");
+        Files.createDirectories(inputFolder);
+        Files.write(inputFolder.resolve("page.html"), ("<html><head><title>Page</title></head><body>"
+                // empty element of the shell (the toggle button of the toolbar):
+                + "<div><main><div><button><script src=\"button.js\"></script></button></div></main></div>"
+                // content of the page (the navigation list):
+                + "<div><div><aside><div><div><nav><ul><script src=\"nav.js\"></script></ul></nav></div></div></aside></div></div>"
+                + "<div id=\"content\"><p>Content</p></div>"
+                + "</body></html>").getBytes(StandardCharsets.UTF_8));
+        Files.write(inputFolder.resolve("button.js"), "var a = 1;".getBytes(StandardCharsets.UTF_8));
+        Files.write(inputFolder.resolve("nav.js"), "var b = 2;".getBytes(StandardCharsets.UTF_8));
+
+        Impl.run(new ConfigurationHolder()
+                .inputRootFolder(inputFolder)
+                .outputRootFolder(outputFolder)
+                .addPage(new ConfigurationPage()
+                        .input("page.html")
+                        .title("Page")
+                        .output("page.html")
+                        .sitePageSelector("div#content"))
+                .options(new ConfigurationOptions()
+                        .completeSite(true)
+                        .includeOriginalJs(true)));
+
+        Document doc = Jsoup.parse(outputFolder.resolve("page.html")
+                .toFile(), "UTF-8");
+        assertThat(doc.select("button.nav-toggle > script")
+                .attr("src")).contains("button");
+        assertThat(doc.select("nav.nav-menu > ul.nav-list > script")
+                .attr("src")).contains("nav");
+        assertThat(doc.select("article.doc p")
+                .text()).isEqualTo("Content");
+
+        SiteGenerator.deleteFolder(folder);
+    }
+
+    @Test
+    void testIsDescendantOf() {
+        Document doc = Jsoup.parse("<html><head><script src=\"head.js\"></script></head><body><div id=\"content\"><p><script src=\"inner.js\"></script></p></div><script src=\"body.js\"></script></body></html>");
+        Element content = doc.getElementById("content");
+        Elements scripts = doc.getElementsByTag("script");
+
+        assertThat(Impl.isDescendantOf(scripts.get(0), content)).isFalse();
+        assertThat(Impl.isDescendantOf(scripts.get(1), content)).isTrue();
+        assertThat(Impl.isDescendantOf(scripts.get(2), content)).isFalse();
+        assertThat(Impl.isDescendantOf(scripts.get(2), doc.body())).isTrue();
+        assertThat(Impl.isDescendantOf(content, content)).isFalse();
+    }
+
     @Test
     void testFindId() {
         assertThat(runFindId("h1", "<h1>title</h1>")).isNotPresent();
@@ -0,0 +1,255 @@
+package fr.jmini.utils.htmlpublish.helper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generate synthetic input folders, used to test and benchmark the publication of large sites.
+ * <p>
+ * The pages are distributed in a tree of folders (each folder has an <code>index.html</code> page). Each page contains headings, links to other pages and references to images, a css and a javascript file.
+ */
+public class SiteGenerator {
+
+    /**
+     * Number of pages to generate.
+     */
+    private int pageCount = 100;
+
+    /**
+     * Number of levels of the folder tree (1 means that all pages are directly in the input folder).
+     */
+    private int treeDepth = 3;
+
+    /**
+     * Number of sub-folders of each folder.
+     */
+    private int fanOut = 5;
+
+    /**
+     * Number of links to other pages in each page.
+     */
+    private int linksPerPage = 5;
+
+    /**
+     * Number of images referenced by each page.
+     */
+    private int imagesPerPage = 1;
+
+    /**
+     * If true, all pages are referencing the same image files. Otherwise each page is referencing its own image files.
+     */
+    private boolean sharedAssets = true;
+
+    /**
+     * If true, a <code>pages.yaml</code> file defining the order of the pages (reversed natural order) is created in each folder.
+     */
+    private boolean pagesYaml = false;
+
+    /**
+     * Seed used to select the link targets.
+     */
+    private long seed = 42L;
+
+    public SiteGenerator pageCount(int count) {
+        this.pageCount = count;
+        return this;
+    }
+
+    public SiteGenerator treeDepth(int depth) {
+        this.treeDepth = depth;
+        return this;
+    }
+
+    public SiteGenerator fanOut(int count) {
+        this.fanOut = count;
+        return this;
+    }
+
+    public SiteGenerator linksPerPage(int count) {
+        this.linksPerPage = count;
+        return this;
+    }
+
+    public SiteGenerator imagesPerPage(int count) {
+        this.imagesPerPage = count;
+        return this;
+    }
+
+    public SiteGenerator sharedAssets(boolean shared) {
+        this.sharedAssets = shared;
+        return this;
+    }
+
+    public SiteGenerator pagesYaml(boolean createPagesYaml) {
+        this.pagesYaml = createPagesYaml;
+        return this;
+    }
+
+    public SiteGenerator seed(long seedValue) {
+        this.seed = seedValue;
+        return this;
+    }
+
+    /**
+     * @param inputRootFolder
+     *            folder where the site is generated (created if it does not exist)
+     * @return the generated pages.
+     */
+    public List<Path> generate(Path inputRootFolder) throws IOException {
+        if (pageCount < 1 || treeDepth < 1 || fanOut < 1) {
+            throw new IllegalStateException("pageCount, treeDepth and fanOut must be positive");
+        }
+        List<Path> folders = createFolderList(inputRootFolder);
+        List<Path> pages = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            if (i < folders.size()) {
+                pages.add(folders.get(i)
+                        .resolve("index.html"));
+            } else {
+                pages.add(folders.get(i % folders.size())
+                        .resolve("page" + i + ".html"));
+            }
+        }
+
+        writeFile(inputRootFolder.resolve("css/site-generator.css"), "body { font-family: sans-serif; }\n".getBytes(StandardCharsets.UTF_8));
+        writeFile(inputRootFolder.resolve("js/site-generator.js"), "console.log('site-generator');\n".getBytes(StandardCharsets.UTF_8));
+        if (sharedAssets) {
+            for (int k = 0; k < imagesPerPage; k++) {
+                writeFile(inputRootFolder.resolve("images/shared-" + k + ".png"), imageContent("shared-" + k));
+            }
+        }
+
+        Random random = new Random(seed);
+        for (int i = 0; i < pageCount; i++) {
+            Path page = pages.get(i);
+            Path folder = page.getParent();
+            String toRoot = relativize(folder, inputRootFolder);
+            String prefix = toRoot.isEmpty() ? "" : toRoot + "/";
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("<!DOCTYPE html>\n<html>\n<head>\n<title>Page " + i + "</title>\n");
+            sb.append("<link rel=\"stylesheet\" href=\"" + prefix + "css/site-generator.css\">\n");
+            sb.append("</head>\n<body>\n<div id=\"content\">\n<h1>Page " + i + "</h1>\n");
+            for (int k = 0; k < imagesPerPage; k++) {
+                String imageName;
+                if (sharedAssets) {
+                    imageName = "shared-" + k + ".png";
+                } else {
+                    imageName = "page" + i + "-" + k + ".png";
+                    writeFile(inputRootFolder.resolve("images/" + imageName), imageContent("page" + i + "-" + k));
+                }
+                sb.append("<img src=\"" + prefix + "images/" + imageName + "\" alt=\"image " + k + "\">\n");
+            }
+            int sections = Math.max(1, (linksPerPage + 4) / 5);
+            for (int s = 0; s < sections; s++) {
+                sb.append("<h2 id=\"section_" + s + "\">Section " + s + "</h2>\n");
+                sb.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit.");
+                for (int l = s * 5; l < Math.min(linksPerPage, (s + 1) * 5); l++) {
+                    Path target = pages.get(random.nextInt(pageCount));
+                    sb.append(" See <a href=\"" + relativize(folder, target) + "#section_0\">link " + l + "</a>.");
+                }
+                sb.append("</p>\n");
+            }
+            sb.append("</div>\n<script src=\"" + prefix + "js/site-generator.js\"></script>\n</body>\n</html>\n");
+            writeFile(page, sb.toString()
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (pagesYaml) {
+            writePagesYaml(folders, pages);
+        }
+        return pages;
+    }
+
+    private List<Path> createFolderList(Path inputRootFolder) {
+        List<Path> folders = new ArrayList<>();
+        folders.add(inputRootFolder);
+        int levelStart = 0;
+        for (int level = 1; level < treeDepth && folders.size() < pageCount; level++) {
+            int levelEnd = folders.size();
+            for (int f = levelStart; f < levelEnd; f++) {
+                for (int c = 0; c < fanOut && folders.size() < pageCount; c++) {
+                    folders.add(folders.get(f)
+                            .resolve("folder" + c));
+                }
+            }
+            levelStart = levelEnd;
+        }
+        return folders;
+    }
+
+    private void writePagesYaml(List<Path> folders, List<Path> pages) throws IOException {
+        Map<Path, List<String>> entries = new LinkedHashMap<>();
+        for (Path folder : folders) {
+            entries.put(folder, new ArrayList<>());
+        }
+        for (Path folder : folders.subList(1, folders.size())) {
+            entries.get(folder.getParent())
+                    .add(folder.getFileName()
+                            .toString());
+        }
+        for (Path page : pages) {
+            String fileName = page.getFileName()
+                    .toString();
+            if (!"index.html".equals(fileName)) {
+                entries.get(page.getParent())
+                        .add(fileName.substring(0, fileName.length() - ".html".length()));
+            }
+        }
+        for (Map.Entry<Path, List<String>> e : entries.entrySet()) {
+            List<String> names = e.getValue();
+            if (!names.isEmpty()) {
+                Collections.sort(names, Comparator.reverseOrder());
+                String content = names.stream()
+                        .map(n -> "  - " + n + "\n")
+                        .collect(Collectors.joining("", "order:\n", ""));
+                writeFile(e.getKey()
+                        .resolve("pages.yaml"), content.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static byte[] imageContent(String name) {
+        byte[] header = new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[header.length + nameBytes.length];
+        System.arraycopy(header, 0, result, 0, header.length);
+        System.arraycopy(nameBytes, 0, result, header.length, nameBytes.length);
+        return result;
+    }
+
+    private static String relativize(Path from, Path to) {
+        return from.relativize(to)
+                .toString()
+                .replace('\\', '/');
+    }
+
+    private static void writeFile(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+    }
+
+    /**
+     * Delete a folder and its content (used to clean up the generated sites).
+     */
+    public static void deleteFolder(Path folder) throws IOException {
+        if (Files.exists(folder)) {
+            try (Stream<Path> stream = Files.walk(folder)) {
+                stream.sorted(Comparator.reverseOrder())
+                        .forEach(p -> p.toFile()
+                                .delete());
+            }
+        }
+    }
+}